@@ -3,15 +3,39 @@ package land.oras;
 import land.oras.auth.AuthProvider;
 import land.oras.auth.AuthStoreAuthenticationProvider;
 import land.oras.auth.UsernamePasswordProvider;
+import land.oras.compress.Compression;
+import land.oras.compress.ParallelCompressingInputStream;
 import land.oras.exception.OrasException;
+import land.oras.progress.BlobDigest;
+import land.oras.progress.ProgressInputStream;
+import land.oras.progress.ProgressMode;
+import land.oras.progress.RangedBlobFetch;
+import land.oras.progress.ResumableDownload;
+import land.oras.progress.StallWatchdog;
+import land.oras.progress.Transfer;
+import land.oras.progress.TransferProgress;
+import land.oras.utils.JsonUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 @CommandLine.Command(
@@ -47,6 +71,34 @@ public class Main implements Runnable {
      */
     private static final Logger LOG = LoggerFactory.getLogger(Main.class);
 
+    /**
+     * Annotation holding the file name of a layer
+     */
+    private static final String ANNOTATION_TITLE = "org.opencontainers.image.title";
+
+    /**
+     * Annotation asking for a layer to be unpacked as a directory
+     */
+    private static final String ANNOTATION_UNPACK = "io.deis.oras.content.unpack";
+
+    /**
+     * Annotations of layers pushed with --compress: the compression, and the media type of the file before it
+     */
+    private static final String ANNOTATION_COMPRESSION = "land.oras.cli.compression";
+    private static final String ANNOTATION_UNCOMPRESSED_MEDIA_TYPE = "land.oras.cli.uncompressed.mediaType";
+
+    /**
+     * Empty config of artifacts pushed with --compress
+     */
+    private static final String EMPTY_CONFIG_MEDIA_TYPE = "application/vnd.oci.empty.v1+json";
+    private static final String EMPTY_CONFIG_DIGEST = "sha256:44136fa355b3678a1146ad16f7e8649e94fb4fc21fe77e8310c060f61caaff8a";
+    private static final byte[] EMPTY_CONFIG_DATA = "{}".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Default --min-rate of transfers whose network stream is counted
+     */
+    private static final long DEFAULT_MIN_RATE = 1024;
+
     // Global log filter
     public static boolean DEBUG = false;
 
@@ -54,7 +106,7 @@ public class Main implements Runnable {
     CommandLine.Model.CommandSpec spec;
 
     public static void main(final String[] args) {
-        System.exit(new CommandLine(new Main()).execute(args));
+        System.exit(new CommandLine(new Main()).setCaseInsensitiveEnumValuesAllowed(true).execute(args));
     }
 
     private static void handleException(OrasException r) {
@@ -131,6 +183,23 @@ public class Main implements Runnable {
         @CommandLine.Option(names = {"--oci-layout"}, description = "Copy an artifact into OCI layout")
         private Boolean ociLayout = false;
 
+        @CommandLine.Option(names = { "--progress" }, description = {
+                "Progress output: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE})"})
+        private ProgressMode progress = ProgressMode.AUTO;
+
+        @CommandLine.Option(names = { "--min-rate" }, description = {
+                "Abort and retry transfers slower than this many bytes per second for --stall-timeout, 0 to disable",
+                "(default: 1024 for blob-push, blob-fetch, push --compress and compressed pulls, disabled for other pulls and copy-oci)"})
+        private Long minRate;
+
+        @CommandLine.Option(names = { "--stall-timeout" }, description = {
+                "Seconds a transfer may stay below --min-rate (default: ${DEFAULT-VALUE})"})
+        private long stallTimeout = 60;
+
+        @CommandLine.Option(names = { "--retries" }, description = {
+                "Retries of a stalled or failed transfer (default: ${DEFAULT-VALUE})"})
+        private int retries = 3;
+
     }
 
     /**
@@ -187,6 +256,14 @@ public class Main implements Runnable {
                 "Skip TLS verification"})
         private Boolean targetSkipTlsVerify = false;
 
+        @CommandLine.Option(names = { "--timeout" }, description = {
+                "Seconds after which a copy attempt is aborted and retried, 0 to disable (default: ${DEFAULT-VALUE})"})
+        private long timeout = 3600;
+
+        @CommandLine.Option(names = { "--retries" }, description = {
+                "Retries of an aborted or failed copy (default: ${DEFAULT-VALUE})"})
+        private int retries = 3;
+
     }
 
     /**
@@ -213,6 +290,106 @@ public class Main implements Runnable {
                 .withAuthProvider(getAuthProvider(options)).build();
     }
 
+    /**
+     * Get the stall watchdog of transfers whose network stream is counted
+     * @param options The options
+     * @return The watchdog
+     */
+    private static StallWatchdog buildWatchdog(ReusableOptions options) {
+        long minRate = options.minRate != null ? options.minRate : DEFAULT_MIN_RATE;
+        return new StallWatchdog(minRate, Duration.ofSeconds(options.stallTimeout));
+    }
+
+    /**
+     * Get the stall watchdog of transfers performed by the SDK, only known from the size of the files being written.
+     * Layers not written in place look stalled, so it is only enabled by an explicit --min-rate.
+     * @param options The options
+     * @return The watchdog
+     */
+    private static StallWatchdog buildSampledWatchdog(ReusableOptions options) {
+        long minRate = options.minRate != null ? options.minRate : 0;
+        return new StallWatchdog(minRate, Duration.ofSeconds(options.stallTimeout));
+    }
+
+    /**
+     * Build the fetcher of blob ranges, shared by the downloads of a command
+     * @param options The options
+     * @param ref The reference
+     * @return The fetcher, or null for local layouts and with --skip-tls-verify, where the SDK fetches the blob
+     */
+    private static RangedBlobFetch buildRangedFetch(ReusableOptions options, Ref ref) {
+        if (ref instanceof ContainerRef containerRef && !options.skipTlsVerify) {
+            return new RangedBlobFetch(containerRef, getAuthProvider(options), options.insecure);
+        }
+        return null;
+    }
+
+    /**
+     * Get an opener of a blob from an offset. The blob is fetched by the SDK, a resumed attempt uses a ranged request
+     * when possible and otherwise fetches it again from the start.
+     * @param oci The OCI source
+     * @param ref The blob reference
+     * @param digest The blob digest
+     * @param ranged The fetcher of blob ranges, or null
+     * @return The opener
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static ResumableDownload.Opener blobOpener(OCI oci, Ref ref, String digest, RangedBlobFetch ranged) {
+        return offset -> offset > 0 && ranged != null
+                ? ranged.open(digest, offset)
+                : new ResumableDownload.Source(oci.fetchBlob(ref), 0);
+    }
+
+    /**
+     * Get the file name of a layer
+     * @param layer The layer
+     * @return The title annotation or null
+     */
+    private static String getTitle(Layer layer) {
+        Map<String, String> annotations = layer.getAnnotations();
+        return annotations != null ? annotations.get(ANNOTATION_TITLE) : null;
+    }
+
+    /**
+     * Delete the files a failed attempt may have left truncated, so the next attempt does not keep them as complete
+     * @param written The files the transfer writes
+     * @param existing The files present before the transfer, which are kept
+     */
+    private static void deletePartial(List<Path> written, Set<Path> existing) throws IOException {
+        for (Path path : written) {
+            if (!existing.contains(path) && Files.deleteIfExists(path)) {
+                LOG.debug("Deleted partial {}", path);
+            }
+        }
+    }
+
+    /**
+     * Get the compression of a layer pushed with --compress. Other compressed layers are kept as they are.
+     * @param layer The layer
+     * @return The compression or null
+     */
+    private static Compression getCompression(Layer layer) {
+        Map<String, String> annotations = layer.getAnnotations();
+        if (annotations == null || annotations.get(ANNOTATION_COMPRESSION) == null) {
+            return null;
+        }
+        Compression compression = Compression.fromName(annotations.get(ANNOTATION_COMPRESSION));
+        if (compression == null) {
+            LOG.warn("Unknown compression {} of {}, keeping it compressed", annotations.get(ANNOTATION_COMPRESSION), getTitle(layer));
+        }
+        return compression;
+    }
+
+    /**
+     * Whether a layer is a directory to unpack
+     * @param layer The layer
+     * @return True if the unpack annotation is set
+     */
+    private static boolean isUnpacked(Layer layer) {
+        Map<String, String> annotations = layer.getAnnotations();
+        return annotations != null && "true".equals(annotations.get(ANNOTATION_UNPACK));
+    }
+
     /**
      * Get the auth provider for copy
      * @param copyOptions The copy options
@@ -368,7 +545,19 @@ public class Main implements Runnable {
             Ref ref = buildRef(options);
             OCI oci = buildOci(options);
             try {
-                Layer layer = oci.pushBlob(ref, file);
+                Layer layer;
+                try (TransferProgress progress = TransferProgress.start(options.progress);
+                     StallWatchdog watchdog = buildWatchdog(options)) {
+                    Transfer transfer = progress.track(file.getFileName().toString(), Files.size(file));
+                    // Uploads restart from the beginning, the SDK cannot resume them
+                    layer = watchdog.call(options.retries, (guard, attempt) -> {
+                        transfer.rewind(0);
+                        try (InputStream input = new ProgressInputStream(guard.monitor(Files.newInputStream(file)), transfer)) {
+                            return oci.pushBlob(ref, input);
+                        }
+                    });
+                    transfer.complete();
+                }
                 LOG.info("Pushed blob with digest {}", layer.getDigest());
             }
             catch (OrasException e) {
@@ -400,7 +589,15 @@ public class Main implements Runnable {
             try {
                 if (outputOptions.output != null) {
                     LOG.info("Fetching blob...");
-                    oci.fetchBlob(ref, outputOptions.output.toPath());
+                    Descriptor descriptor = oci.fetchBlobDescriptor(ref);
+                    try (TransferProgress progress = TransferProgress.start(options.progress);
+                         StallWatchdog watchdog = buildWatchdog(options);
+                         RangedBlobFetch ranged = buildRangedFetch(options, ref)) {
+                        Transfer transfer = progress.track(descriptor.getDigest(), descriptor.getSize());
+                        ResumableDownload.download(watchdog, options.retries, blobOpener(oci, ref, descriptor.getDigest(), ranged),
+                                outputOptions.output.toPath(), descriptor.getSize(), descriptor.getDigest(), transfer);
+                        transfer.complete();
+                    }
                     LOG.info("Fetched blob on {}", outputOptions.output.getAbsolutePath());
                 }
                 if (outputOptions.descriptor) {
@@ -540,8 +737,12 @@ public class Main implements Runnable {
                     .withSkipTlsVerify(options.targetSkipTlsVerify)
                     .withAuthProvider(getAuthProvider(options).getRight()).build();
 
-            try {
-                sourceRegistry.copy(targetRegistry, sourceContainer, targetContainer);
+            // The SDK copies without reporting bytes, so a hung copy is only caught by the deadline
+            try (StallWatchdog watchdog = new StallWatchdog(0, Duration.ZERO, Duration.ofSeconds(options.timeout))) {
+                watchdog.call(options.retries, (guard, attempt) -> {
+                    sourceRegistry.copy(targetRegistry, sourceContainer, targetContainer);
+                    return null;
+                });
             }
             catch (OrasException e) {
                 handleException(e);
@@ -581,8 +782,36 @@ public class Main implements Runnable {
                     .withAuthProvider(getAuthProvider(options)).build();
             OCILayout ociLayout = OCILayout.Builder.builder().defaults(output).build();
 
-            try {
-                ociLayout.copy(sourceRegistry, container, recursive);
+            try (TransferProgress progress = TransferProgress.start(options.progress);
+                 StallWatchdog watchdog = buildSampledWatchdog(options)) {
+                Path blobs = output.resolve("blobs");
+                List<Path> written = new ArrayList<>();
+                Set<Path> existing = new HashSet<>();
+                try {
+                    for (Layer layer : sourceRegistry.getManifest(container).getLayers()) {
+                        String[] digest = layer.getDigest().split(":", 2);
+                        Path blob = blobs.resolve(digest[0]).resolve(digest[1]);
+                        progress.probe(layer.getDigest(), layer.getSize(), blob);
+                        written.add(blob);
+                        if (Files.exists(blob)) {
+                            existing.add(blob);
+                        }
+                    }
+                }
+                catch (OrasException e) {
+                    // Not a single manifest (index), track the layout as a whole
+                    progress.probe(options.repository, -1, blobs);
+                }
+                watchdog.call(options.retries, (guard, attempt) -> {
+                    if (attempt > 1) {
+                        // The layout skips blobs already present, even truncated ones
+                        deletePartial(written, existing);
+                    }
+                    guard.watch(progress::bytes);
+                    ociLayout.copy(sourceRegistry, container, recursive);
+                    return null;
+                });
+                progress.completeAll();
             }
             catch (OrasException e) {
                 handleException(e);
@@ -612,6 +841,12 @@ public class Main implements Runnable {
         @CommandLine.Option(names = {"--annotation-file"}, description = "path of the annotation file")
         private Path annotationFile;
 
+        @CommandLine.Option(names = {"--compress"}, description = "compress the file in parallel while pushing: ${COMPLETION-CANDIDATES}")
+        private Compression compress;
+
+        @CommandLine.Spec
+        CommandLine.Model.CommandSpec spec;
+
         @Override
         @SuppressWarnings({"rawtypes", "unchecked"})
         public Integer call() throws Exception {
@@ -626,7 +861,9 @@ public class Main implements Runnable {
                 if (annotationFile != null) {
                     annotations = Annotations.fromJson(Files.readString(annotationFile));
                 }
-                Manifest manifest = oci.pushArtifact(ref, ArtifactType.from(artifactType), annotations, LocalPath.of(file));
+                Manifest manifest = compress != null
+                        ? pushCompressed(oci, ref, annotations)
+                        : oci.pushArtifact(ref, ArtifactType.from(artifactType), annotations, LocalPath.of(file));
                 if (exportManifestPath != null) {
                     Files.writeString(exportManifestPath, manifest.toJson());
                     LOG.info("Exported manifest to {}", exportManifestPath);
@@ -638,6 +875,70 @@ public class Main implements Runnable {
             }
             return 0;
         }
+
+        /**
+         * Push the file as a single compressed layer, compressed while it is uploaded
+         * @param oci The OCI target
+         * @param ref The reference
+         * @param annotations The annotations
+         * @return The pushed manifest
+         */
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        private Manifest pushCompressed(OCI oci, Ref ref, Annotations annotations) throws Exception {
+            LocalPath localPath = LocalPath.of(file);
+            Path path = localPath.getPath();
+            if (Files.isDirectory(path)) {
+                throw new CommandLine.ParameterException(spec.commandLine(), "--compress only supports files");
+            }
+            String title = path.getFileName().toString();
+            Layer layer;
+            try (TransferProgress progress = TransferProgress.start(options.progress);
+                 StallWatchdog watchdog = buildWatchdog(options)) {
+                Transfer transfer = progress.track(title, Files.size(path));
+                layer = watchdog.call(options.retries, (guard, attempt) -> {
+                    transfer.rewind(0);
+                    InputStream source = new ProgressInputStream(Files.newInputStream(path), transfer);
+                    try (InputStream input = guard.monitor(new ParallelCompressingInputStream(
+                            source, compress, Runtime.getRuntime().availableProcessors()))) {
+                        return oci.pushBlob(ref, input);
+                    }
+                });
+                transfer.complete();
+            }
+            oci.pushBlob(ref, new ByteArrayInputStream(EMPTY_CONFIG_DATA));
+            LOG.info("Uploaded {} compressed with {}: {}", title, compress, layer.getDigest());
+
+            Map<String, String> layerAnnotations = new LinkedHashMap<>();
+            if (annotations.filesAnnotations() != null && annotations.filesAnnotations().get(title) != null) {
+                layerAnnotations.putAll(annotations.filesAnnotations().get(title));
+            }
+            layerAnnotations.put(ANNOTATION_TITLE, title);
+            layerAnnotations.put(ANNOTATION_COMPRESSION, compress.getName());
+            layerAnnotations.put(ANNOTATION_UNCOMPRESSED_MEDIA_TYPE, localPath.getMediaType());
+            Map<String, Object> layerDescriptor = new LinkedHashMap<>();
+            layerDescriptor.put("mediaType", compress.mediaType(localPath.getMediaType()));
+            layerDescriptor.put("digest", layer.getDigest());
+            layerDescriptor.put("size", layer.getSize());
+            layerDescriptor.put("annotations", layerAnnotations);
+
+            Map<String, Object> config = new LinkedHashMap<>();
+            config.put("mediaType", EMPTY_CONFIG_MEDIA_TYPE);
+            config.put("digest", EMPTY_CONFIG_DIGEST);
+            config.put("size", EMPTY_CONFIG_DATA.length);
+
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("schemaVersion", 2);
+            json.put("mediaType", "application/vnd.oci.image.manifest.v1+json");
+            json.put("artifactType", ArtifactType.from(artifactType).getMediaType());
+            json.put("config", config);
+            json.put("layers", List.of(layerDescriptor));
+            if (annotations.manifestAnnotations() != null && !annotations.manifestAnnotations().isEmpty()) {
+                json.put("annotations", annotations.manifestAnnotations());
+            }
+            Manifest manifest = Manifest.fromJson(JsonUtils.toJson(json));
+            oci.pushManifest(ref, manifest);
+            return manifest;
+        }
     }
 
     @CommandLine.Command(name = "pull", description = "Pull an artifact")
@@ -662,9 +963,54 @@ public class Main implements Runnable {
             LOG.info("Pull artifact...");
             Ref ref = buildRef(options);
             OCI oci = buildOci(options);
-            try {
+            try (TransferProgress progress = TransferProgress.start(options.progress)) {
                 Files.createDirectories(output);
-                oci.pullArtifact(ref, output, !keepOldFiles);
+                Manifest manifest = oci.getManifest(ref);
+                boolean compressed = manifest.getLayers().stream().anyMatch(layer -> getCompression(layer) != null);
+                boolean unpacked = manifest.getLayers().stream().anyMatch(Main::isUnpacked);
+                if (compressed && !unpacked) {
+                    try (StallWatchdog watchdog = buildWatchdog(options);
+                         RangedBlobFetch ranged = buildRangedFetch(options, ref)) {
+                        pullLayers(oci, ref, manifest, progress, watchdog, ranged);
+                    }
+                    progress.completeAll();
+                    return 0;
+                }
+                // Files kept by --keep-old-files must not be decompressed again, nor deleted before a retry
+                List<Path> written = new ArrayList<>();
+                Set<Path> existing = new HashSet<>();
+                // Directories are extracted from a temporary archive and untitled layers have no file to sample
+                boolean probed = true;
+                for (Layer layer : manifest.getLayers()) {
+                    String title = getTitle(layer);
+                    if (title != null && !isUnpacked(layer)) {
+                        progress.probe(title, layer.getSize(), output.resolve(title));
+                        written.add(output.resolve(title));
+                        if (Files.exists(output.resolve(title))) {
+                            existing.add(output.resolve(title));
+                        }
+                    }
+                    else {
+                        probed = false;
+                    }
+                }
+                if (!probed && options.minRate != null && options.minRate > 0) {
+                    LOG.warn("Ignoring --min-rate, directories and untitled layers cannot be sampled");
+                }
+                try (StallWatchdog watchdog = probed ? buildSampledWatchdog(options) : new StallWatchdog(0, Duration.ZERO)) {
+                    watchdog.call(options.retries, (guard, attempt) -> {
+                        if (attempt > 1) {
+                            deletePartial(written, existing);
+                        }
+                        guard.watch(progress::bytes);
+                        oci.pullArtifact(ref, output, !keepOldFiles);
+                        return null;
+                    });
+                }
+                if (compressed) {
+                    decompressPulled(manifest, keepOldFiles ? existing : Set.of());
+                }
+                progress.completeAll();
             }
             catch (OrasException e) {
                 handleException(e);
@@ -672,6 +1018,99 @@ public class Main implements Runnable {
             }
             return 0;
         }
+
+        /**
+         * Get the file of a layer under the output directory
+         * @param title The layer title
+         * @return The file, or null if the title points outside of the output directory
+         */
+        private Path resolveTitle(String title) {
+            Path root = output.toAbsolutePath().normalize();
+            Path target = root.resolve(title).normalize();
+            if (!target.startsWith(root)) {
+                LOG.warn("Skipping {}, outside of {}", title, root);
+                return null;
+            }
+            return target;
+        }
+
+        /**
+         * Decompress in place the files of --compress layers pulled by the SDK along with directories
+         * @param manifest The manifest
+         * @param kept The files kept from before the pull
+         */
+        private void decompressPulled(Manifest manifest, Set<Path> kept) throws IOException {
+            for (Layer layer : manifest.getLayers()) {
+                Compression compression = getCompression(layer);
+                String title = getTitle(layer);
+                Path target = compression != null && title != null ? resolveTitle(title) : null;
+                if (target == null || kept.contains(output.resolve(title))) {
+                    continue;
+                }
+                BlobDigest verifier = new BlobDigest(layer.getDigest());
+                Path decompressed = Files.createTempFile(target.getParent(), ".oras-", ".tmp");
+                try {
+                    try (InputStream blob = verifier.digesting(Files.newInputStream(target));
+                         InputStream input = compression.decompress(blob)) {
+                        Files.copy(input, decompressed, StandardCopyOption.REPLACE_EXISTING);
+                        blob.transferTo(OutputStream.nullOutputStream());
+                    }
+                    verifier.verify(target);
+                    Files.move(decompressed, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                finally {
+                    Files.deleteIfExists(decompressed);
+                }
+            }
+        }
+
+        /**
+         * Pull each file layer, decompressing compressed ones while they are streamed to disk
+         * @param oci The OCI source
+         * @param ref The reference
+         * @param manifest The manifest
+         * @param progress The progress
+         * @param watchdog The watchdog
+         * @param ranged The fetcher of blob ranges, or null
+         */
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        private void pullLayers(OCI oci, Ref ref, Manifest manifest, TransferProgress progress, StallWatchdog watchdog, RangedBlobFetch ranged)
+                throws Exception {
+            for (Layer layer : manifest.getLayers()) {
+                String title = getTitle(layer);
+                Path target = title != null ? resolveTitle(title) : null;
+                if (target == null) {
+                    continue;
+                }
+                if (keepOldFiles && Files.exists(target)) {
+                    LOG.info("Keeping existing {}", target);
+                    continue;
+                }
+                Transfer transfer = progress.track(title, layer.getSize());
+                Ref layerRef = ref.withDigest(layer.getDigest());
+                Files.createDirectories(target.getParent());
+                Compression compression = getCompression(layer);
+                if (compression == null) {
+                    ResumableDownload.download(watchdog, options.retries, blobOpener(oci, layerRef, layer.getDigest(), ranged), target, layer.getSize(), layer.getDigest(), transfer);
+                }
+                else {
+                    // Decompressed output cannot be resumed, a stalled layer restarts
+                    watchdog.call(options.retries, (guard, attempt) -> {
+                        transfer.rewind(0);
+                        BlobDigest verifier = new BlobDigest(layer.getDigest());
+                        InputStream blob = verifier.digesting(new ProgressInputStream(guard.monitor(oci.fetchBlob(layerRef)), transfer));
+                        try (InputStream input = compression.decompress(blob)) {
+                            Files.copy(input, target, StandardCopyOption.REPLACE_EXISTING);
+                            // Trailing bytes after the last frame are part of the digest
+                            blob.transferTo(OutputStream.nullOutputStream());
+                        }
+                        verifier.verify(target);
+                        return null;
+                    });
+                }
+                transfer.complete();
+            }
+        }
     }
     
 }
@@ -0,0 +1,123 @@
+package land.oras.compress;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Layer compression.
+ * Blocks are compressed independently and concatenated, as multiple gzip members or multiple zstd frames,
+ * which standard decoders read as a single stream.
+ */
+public enum Compression {
+
+    /**
+     * pigz-style gzip, one member per block
+     */
+    GZIP("gzip", 1024 * 1024) {
+        @Override
+        byte[] compress(byte[] block) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(block.length / 2 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE)) {
+                gzip.write(block);
+            }
+            return out.toByteArray();
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+
+    /**
+     * Multi-frame zstd, one frame per block
+     */
+    ZSTD("zstd", 4 * 1024 * 1024) {
+        @Override
+        byte[] compress(byte[] block) {
+            return Zstd.compress(block, ZSTD_LEVEL);
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new BufferedInputStream(new ZstdInputStream(in), BUFFER_SIZE);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Default zstd level, same as the zstd command line
+     */
+    private static final int ZSTD_LEVEL = 3;
+
+    private final String name;
+    private final int blockSize;
+
+    Compression(String name, int blockSize) {
+        this.name = name;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Compress a single block into a self-contained gzip member or zstd frame
+     * @param block The block
+     * @return The compressed block
+     * @throws IOException On failure
+     */
+    abstract byte[] compress(byte[] block) throws IOException;
+
+    /**
+     * Decompress a stream
+     * @param in The compressed stream
+     * @return The decompressed stream
+     * @throws IOException On failure
+     */
+    public abstract InputStream decompress(InputStream in) throws IOException;
+
+    /**
+     * @return The size of the blocks compressed in parallel
+     */
+    int blockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Get the media type of a layer compressed with this compression
+     * @param mediaType The media type of the uncompressed content
+     * @return The media type with the compression suffix
+     */
+    public String mediaType(String mediaType) {
+        String suffix = "+" + name;
+        return mediaType.endsWith(suffix) ? mediaType : mediaType + suffix;
+    }
+
+    /**
+     * @return The name, as in media type suffixes
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get a compression from its name
+     * @param name The name, like gzip or zstd
+     * @return The compression or null if unknown
+     */
+    public static Compression fromName(String name) {
+        for (Compression compression : values()) {
+            if (compression.name.equals(name)) {
+                return compression;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,167 @@
+package land.oras.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Compressed view of a stream, with blocks compressed in parallel ahead of the reader.
+ * Blocks are read from the source on the reading thread and the blocks in flight fit a fixed budget, at most two per thread,
+ * so memory stays bounded whatever the size of the source and the number of cores.
+ * The stream may be closed from another thread, such as a watchdog aborting the transfer.
+ */
+public class ParallelCompressingInputStream extends InputStream {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Uncompressed bytes submitted ahead of the reader
+     */
+    static final int MAX_IN_FLIGHT_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Interval at which a reader waiting for a block checks whether the stream was closed
+     */
+    private static final long POLL_MILLIS = 100;
+
+    private final InputStream source;
+    private final Compression compression;
+    private final ExecutorService executor;
+    private final int window;
+    // Only touched by the reading thread
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private volatile boolean closed;
+    private byte[] current = EMPTY;
+    private int position;
+    private boolean eof;
+    private boolean submitted;
+
+    /**
+     * Create the stream
+     * @param source The uncompressed source, closed with this stream
+     * @param compression The compression
+     * @param threads The maximum number of compression threads, fewer are used when the budget holds fewer blocks
+     */
+    public ParallelCompressingInputStream(InputStream source, Compression compression, int threads) {
+        this.source = source;
+        this.compression = compression;
+        this.window = Math.max(1, Math.min(Math.max(1, threads) * 2, MAX_IN_FLIGHT_BYTES / compression.blockSize()));
+        this.executor = Executors.newFixedThreadPool(Math.min(Math.max(1, threads), window), runnable -> {
+            Thread thread = new Thread(runnable, "oras-compress");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureBlock()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureBlock()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Make sure the current block has bytes left, waiting for the next one if needed
+     * @return False at the end of the stream
+     */
+    private boolean ensureBlock() throws IOException {
+        while (position == current.length) {
+            ensureOpen();
+            fill();
+            Future<byte[]> next = pending.poll();
+            if (next == null) {
+                return false;
+            }
+            current = await(next);
+            position = 0;
+        }
+        return true;
+    }
+
+    private void fill() throws IOException {
+        while (!eof && pending.size() < window) {
+            ensureOpen();
+            byte[] block = source.readNBytes(compression.blockSize());
+            if (block.length < compression.blockSize()) {
+                eof = true;
+            }
+            // An empty source still compresses to a valid, empty stream
+            if (block.length > 0 || !submitted) {
+                try {
+                    pending.add(executor.submit(() -> compression.compress(block)));
+                }
+                catch (RejectedExecutionException e) {
+                    throw new IOException("Stream closed");
+                }
+                submitted = true;
+            }
+        }
+    }
+
+    private byte[] await(Future<byte[]> future) throws IOException {
+        while (true) {
+            ensureOpen();
+            try {
+                return future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            catch (TimeoutException e) {
+                // Check again whether the stream was closed meanwhile
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while compressing");
+            }
+            catch (ExecutionException e) {
+                ensureOpen();
+                if (e.getCause() instanceof IOException cause) {
+                    throw cause;
+                }
+                throw new IOException("Failed to compress block", e.getCause());
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Close the stream, possibly from another thread than the reader. Blocks in flight are dropped with the executor.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        executor.shutdownNow();
+        source.close();
+    }
+
+}
@@ -0,0 +1,75 @@
+package land.oras.progress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Verification of downloaded content against the digest of its descriptor
+ */
+public final class BlobDigest {
+
+    private final String expected;
+    private final MessageDigest digest;
+
+    /**
+     * Create a verifier
+     * @param expected The expected digest, like sha256:...
+     * @throws IllegalArgumentException If the algorithm is not supported
+     */
+    public BlobDigest(String expected) {
+        this.expected = expected;
+        String algorithm = expected.substring(0, Math.max(0, expected.indexOf(':')));
+        try {
+            this.digest = MessageDigest.getInstance(switch (algorithm) {
+                case "sha256" -> "SHA-256";
+                case "sha384" -> "SHA-384";
+                case "sha512" -> "SHA-512";
+                default -> throw new IllegalArgumentException("Unsupported digest " + expected);
+            });
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported digest " + expected, e);
+        }
+    }
+
+    /**
+     * Feed content read from a stream, up to its end
+     * @param in The stream
+     */
+    public void update(InputStream in) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+    }
+
+    /**
+     * Feed the content read through a stream
+     * @param in The stream
+     * @return The digesting stream
+     */
+    public InputStream digesting(InputStream in) {
+        return new DigestInputStream(in, digest);
+    }
+
+    /**
+     * Check the content fed so far, deleting the target on a mismatch
+     * @param target The file holding the content
+     * @throws IOException If the digest does not match
+     */
+    public void verify(Path target) throws IOException {
+        String actual = expected.substring(0, expected.indexOf(':') + 1) + HexFormat.of().formatHex(digest.digest());
+        if (!actual.equals(expected)) {
+            Files.deleteIfExists(target);
+            throw new IOException("Expected digest %s but received %s, deleted %s".formatted(expected, actual, target));
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package land.oras.progress;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Machine-readable progress, one JSON object per line.
+ * Periodic snapshots are emitted as {@code progress} events and the final one as a {@code complete} event.
+ */
+public class EventProgressRenderer implements ProgressRenderer {
+
+    private final PrintStream out;
+
+    public EventProgressRenderer(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void render(ProgressSnapshot snapshot) {
+        out.println(toJson("progress", snapshot));
+        out.flush();
+    }
+
+    @Override
+    public void finish(ProgressSnapshot snapshot) {
+        out.println(toJson("complete", snapshot));
+        out.flush();
+    }
+
+    /**
+     * Serialize a snapshot as a single line JSON event
+     * @param event The event name
+     * @param snapshot The snapshot
+     * @return The JSON line
+     */
+    static String toJson(String event, ProgressSnapshot snapshot) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"event\":\"").append(event).append('"');
+        json.append(",\"elapsedMillis\":").append(snapshot.elapsedNanos() / 1_000_000);
+        json.append(",\"transfers\":[");
+        for (int i = 0; i < snapshot.transfers().size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            append(json, snapshot.transfers().get(i));
+        }
+        json.append("],\"total\":");
+        append(json, snapshot.total());
+        return json.append('}').toString();
+    }
+
+    private static void append(StringBuilder json, ProgressSnapshot.Sample sample) {
+        json.append("{\"name\":\"");
+        escape(json, sample.name());
+        json.append("\",\"bytes\":").append(sample.bytes());
+        json.append(",\"size\":").append(sample.size());
+        json.append(",\"bytesPerSecond\":").append(String.format(Locale.ROOT, "%.0f", sample.bytesPerSecond()));
+        json.append(",\"etaSeconds\":").append(sample.etaSeconds());
+        json.append(",\"done\":").append(sample.done());
+        json.append('}');
+    }
+
+    private static void escape(StringBuilder json, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    }
+                    else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+    }
+
+}
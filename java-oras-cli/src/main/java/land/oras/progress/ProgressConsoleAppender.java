@@ -0,0 +1,16 @@
+package land.oras.progress;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.ConsoleAppender;
+
+/**
+ * Console appender writing log lines above the live progress view, so they do not break its redraws
+ */
+public class ProgressConsoleAppender extends ConsoleAppender<ILoggingEvent> {
+
+    @Override
+    protected void subAppend(ILoggingEvent event) {
+        TerminalProgressRenderer.writeAbove(() -> super.subAppend(event));
+    }
+
+}
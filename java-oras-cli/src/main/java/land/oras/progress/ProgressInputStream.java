@@ -0,0 +1,52 @@
+package land.oras.progress;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream counting the bytes read into a {@link Transfer}
+ */
+public class ProgressInputStream extends FilterInputStream {
+
+    private final Transfer transfer;
+
+    public ProgressInputStream(InputStream in, Transfer transfer) {
+        super(in);
+        this.transfer = transfer;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            transfer.add(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0) {
+            transfer.add(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        if (skipped > 0) {
+            transfer.add(skipped);
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // Counting cannot be rewound
+        return false;
+    }
+
+}
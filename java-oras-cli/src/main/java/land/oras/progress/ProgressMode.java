@@ -0,0 +1,61 @@
+package land.oras.progress;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * How transfer progress is reported
+ */
+public enum ProgressMode {
+
+    /**
+     * Live view on a terminal, events otherwise
+     */
+    AUTO,
+
+    /**
+     * Live per-layer and aggregate view redrawn in place
+     */
+    TTY,
+
+    /**
+     * Periodic machine-readable JSON events, one per line
+     */
+    EVENTS,
+
+    /**
+     * No progress output
+     */
+    NONE;
+
+    /**
+     * Resolve {@link #AUTO} against stderr, where progress is drawn
+     * @return The effective mode
+     */
+    public ProgressMode resolve() {
+        if (this != AUTO) {
+            return this;
+        }
+        return isStderrTerminal() ? TTY : EVENTS;
+    }
+
+    /**
+     * Whether stderr is a terminal. Without /proc, only the console attached to stdin and stdout can be checked,
+     * so redirecting stderr alone on such systems still needs --progress events.
+     * @return True on a terminal
+     */
+    private static boolean isStderrTerminal() {
+        Path stderr = Path.of("/proc/self/fd/2");
+        if (Files.isSymbolicLink(stderr)) {
+            try {
+                String target = Files.readSymbolicLink(stderr).toString();
+                return target.startsWith("/dev/pts/") || target.startsWith("/dev/tty");
+            }
+            catch (IOException e) {
+                return false;
+            }
+        }
+        return System.console() != null;
+    }
+}
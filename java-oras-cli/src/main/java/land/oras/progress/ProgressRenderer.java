@@ -0,0 +1,20 @@
+package land.oras.progress;
+
+/**
+ * Renders progress snapshots
+ */
+public interface ProgressRenderer {
+
+    /**
+     * Render a periodic snapshot
+     * @param snapshot The snapshot
+     */
+    void render(ProgressSnapshot snapshot);
+
+    /**
+     * Render the final snapshot once all transfers are over
+     * @param snapshot The snapshot
+     */
+    void finish(ProgressSnapshot snapshot);
+
+}
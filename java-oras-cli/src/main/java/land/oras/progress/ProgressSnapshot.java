@@ -0,0 +1,49 @@
+package land.oras.progress;
+
+import java.util.List;
+
+/**
+ * Point in time view of all transfers of a command
+ * @param elapsedNanos Time since progress tracking started
+ * @param transfers The per-transfer samples
+ * @param total The aggregate sample
+ */
+public record ProgressSnapshot(long elapsedNanos, List<Sample> transfers, Sample total) {
+
+    /**
+     * Sample of a single transfer
+     * @param name The transfer name
+     * @param bytes The bytes transferred so far
+     * @param size The expected size, or -1 if unknown
+     * @param bytesPerSecond The smoothed throughput
+     * @param done True once complete
+     */
+    public record Sample(String name, long bytes, long size, double bytesPerSecond, boolean done) {
+
+        /**
+         * @return The estimated remaining seconds, or -1 if unknown
+         */
+        public long etaSeconds() {
+            if (done) {
+                return 0;
+            }
+            if (size < 0 || bytesPerSecond < 1) {
+                return -1;
+            }
+            return (long) Math.ceil(Math.max(0, size - bytes) / bytesPerSecond);
+        }
+
+        /**
+         * @return The completed fraction between 0 and 1, or -1 if unknown
+         */
+        public double fraction() {
+            if (done) {
+                return 1;
+            }
+            if (size <= 0) {
+                return -1;
+            }
+            return Math.min(1, (double) bytes / size);
+        }
+    }
+}
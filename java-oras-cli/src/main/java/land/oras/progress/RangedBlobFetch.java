@@ -0,0 +1,193 @@
+package land.oras.progress;
+
+import land.oras.ContainerRef;
+import land.oras.auth.AuthProvider;
+import land.oras.exception.OrasException;
+import land.oras.utils.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Blob reads from an offset with a {@code Range} request on the registry API, which the SDK does not expose.
+ * Registries answering with the whole blob are still supported, the stream then starts at the beginning of the blob.
+ */
+public final class RangedBlobFetch implements AutoCloseable {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(RangedBlobFetch.class);
+
+    private static final Pattern CHALLENGE_PARAMETER = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+    private static final int MAX_REDIRECTS = 5;
+
+    private final HttpClient client;
+    private final ContainerRef ref;
+    private final AuthProvider authProvider;
+    private final String scheme;
+    private volatile String authorization;
+
+    /**
+     * Create a fetcher
+     * @param ref The container reference
+     * @param authProvider The auth provider
+     * @param insecure Whether to use plain HTTP
+     */
+    public RangedBlobFetch(ContainerRef ref, AuthProvider authProvider, boolean insecure) {
+        this.ref = ref;
+        this.authProvider = authProvider;
+        this.scheme = insecure ? "http" : "https";
+        // Redirects are followed by hand, credentials must not leak to blob storage
+        this.client = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+    }
+
+    /**
+     * Open a blob
+     * @param digest The blob digest
+     * @param offset The first byte wanted
+     * @return The stream, starting at the offset or at 0 when the registry ignored the range
+     * @throws IOException On a network failure or a server error, which can be retried
+     */
+    public ResumableDownload.Source open(String digest, long offset) throws IOException {
+        URI uri = URI.create("%s://%s/v2/%s/blobs/%s".formatted(scheme, ref.getApiRegistry(), ref.getFullRepository(), digest));
+        if (authorization == null) {
+            authorization = authProvider.getAuthHeader(ref);
+        }
+        HttpResponse<InputStream> response = send(uri, offset, authorization);
+        if (response.statusCode() == 401) {
+            String challenge = response.headers().firstValue("WWW-Authenticate").orElse("");
+            response.body().close();
+            authorization = "Bearer " + token(challenge);
+            response = send(uri, offset, authorization);
+        }
+        for (int redirects = 0; isRedirect(response.statusCode()) && redirects < MAX_REDIRECTS; redirects++) {
+            URI location = uri.resolve(response.headers().firstValue("Location").orElseThrow(() -> new IOException("Redirect without location")));
+            response.body().close();
+            response = send(location, offset, null);
+        }
+
+        InputStream body = response.body();
+        int status = response.statusCode();
+        if (status == 206) {
+            String range = response.headers().firstValue("Content-Range").orElse("");
+            if (!range.startsWith("bytes %d-".formatted(offset))) {
+                body.close();
+                throw new IOException("Unexpected range %s for offset %d".formatted(range, offset));
+            }
+            return new ResumableDownload.Source(body, offset);
+        }
+        if (status == 200) {
+            if (offset > 0) {
+                LOG.debug("Registry ignored the range of {}, reading it from the start", digest);
+            }
+            return new ResumableDownload.Source(body, 0);
+        }
+        body.close();
+        if (status == 408 || status == 429 || status >= 500) {
+            throw new IOException("Failed to fetch blob %s: HTTP %d".formatted(digest, status));
+        }
+        throw new OrasException("Failed to fetch blob %s: HTTP %d".formatted(digest, status));
+    }
+
+    private HttpResponse<InputStream> send(URI uri, long offset, String authorization) throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).GET();
+        if (offset > 0) {
+            request.header("Range", "bytes=%d-".formatted(offset));
+        }
+        if (authorization != null) {
+            request.header("Authorization", authorization);
+        }
+        try {
+            return client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + uri);
+        }
+    }
+
+    /**
+     * Get a pull token for a Bearer challenge
+     * @param challenge The WWW-Authenticate header
+     * @return The token
+     */
+    @SuppressWarnings("unchecked")
+    private String token(String challenge) throws IOException {
+        if (!challenge.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            throw new OrasException("Unsupported authentication challenge: " + challenge);
+        }
+        Map<String, String> parameters = new HashMap<>();
+        Matcher matcher = CHALLENGE_PARAMETER.matcher(challenge);
+        while (matcher.find()) {
+            parameters.put(matcher.group(1), matcher.group(2));
+        }
+        String realm = parameters.get("realm");
+        if (realm == null || realm.isBlank()) {
+            throw new OrasException("Authentication challenge without realm: " + challenge);
+        }
+        String scope = parameters.getOrDefault("scope", "repository:%s:pull".formatted(ref.getFullRepository()));
+        StringBuilder uri = new StringBuilder(realm)
+                .append(realm.contains("?") ? '&' : '?')
+                .append("scope=").append(URLEncoder.encode(scope, StandardCharsets.UTF_8));
+        if (parameters.containsKey("service")) {
+            uri.append("&service=").append(URLEncoder.encode(parameters.get("service"), StandardCharsets.UTF_8));
+        }
+        HttpRequest.Builder request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(uri.toString())).GET();
+        }
+        catch (IllegalArgumentException e) {
+            throw new OrasException("Invalid authentication realm: " + realm);
+        }
+        // Whatever credentials the provider has, basic or an identity token, are exchanged for a pull token
+        String credentials = authProvider.getAuthHeader(ref);
+        if (credentials != null) {
+            request.header("Authorization", credentials);
+        }
+        HttpResponse<String> response;
+        try {
+            response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while authenticating");
+        }
+        if (response.statusCode() != 200) {
+            throw new OrasException("Failed to get a token from %s: HTTP %d".formatted(uri, response.statusCode()));
+        }
+        Map<String, Object> token = JsonUtils.fromJson(response.body(), Map.class);
+        Object value = token.get("token") != null ? token.get("token") : token.get("access_token");
+        if (value == null) {
+            throw new OrasException("No token returned by " + uri);
+        }
+        return value.toString();
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    private static boolean isRedirect(int status) {
+        return status == 301 || status == 302 || status == 303 || status == 307 || status == 308;
+    }
+
+}
@@ -0,0 +1,91 @@
+package land.oras.progress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Download of a blob stream into a file, resumed from the bytes already on disk when an attempt stalls or fails.
+ * A resumed attempt opens the blob at the first missing byte, see {@link RangedBlobFetch}, or skips up to it on sources that cannot seek.
+ */
+public final class ResumableDownload {
+
+    private ResumableDownload() {
+        // Utility class
+    }
+
+    /**
+     * Opens a stream on a blob
+     */
+    @FunctionalInterface
+    public interface Opener {
+
+        /**
+         * Open the blob
+         * @param offset The first byte wanted
+         * @return The stream, starting at the offset or before it when the source cannot seek
+         * @throws Exception On failure
+         */
+        Source open(long offset) throws Exception;
+    }
+
+    /**
+     * A stream on a blob
+     * @param input The stream
+     * @param position The position in the blob of the first byte of the stream
+     */
+    public record Source(InputStream input, long position) {
+    }
+
+    /**
+     * Download a blob
+     * @param watchdog The watchdog
+     * @param retries The number of retries after the first attempt
+     * @param opener Opens a new stream on the blob for each attempt
+     * @param target The target file
+     * @param size The expected size, or -1 if unknown
+     * @param digest The expected digest, the target is deleted if the content does not match
+     * @param transfer The transfer to report progress to
+     * @throws Exception If the last attempt failed
+     */
+    public static void download(StallWatchdog watchdog, int retries, Opener opener, Path target, long size, String digest, Transfer transfer)
+            throws Exception {
+        watchdog.call(retries, (guard, attempt) -> {
+            long offset = attempt == 1 || !Files.exists(target) ? 0 : Files.size(target);
+            if (size >= 0 && offset > size) {
+                offset = 0;
+            }
+            transfer.rewind(offset);
+            BlobDigest verifier = new BlobDigest(digest);
+            if (offset > 0) {
+                // Hashing the bytes on disk is not network throughput
+                guard.pause();
+                try (InputStream written = Files.newInputStream(target)) {
+                    verifier.update(written);
+                }
+                guard.resume();
+            }
+            // Nothing left to fetch when the previous attempt failed after the last byte
+            if (offset == 0 || size < 0 || offset < size) {
+                Source source = opener.open(offset);
+                try (InputStream input = guard.monitor(source.input());
+                     OutputStream output = offset == 0 ? Files.newOutputStream(target) : Files.newOutputStream(target, StandardOpenOption.APPEND)) {
+                    // Bytes skipped on the network still count as throughput
+                    input.skipNBytes(offset - source.position());
+                    verifier.digesting(new ProgressInputStream(input, transfer)).transferTo(output);
+                }
+            }
+            long received = Files.size(target);
+            if (size >= 0 && received != size) {
+                throw new IOException("Expected %d bytes but received %d".formatted(size, received));
+            }
+            // A mismatch deletes the target, so a retry starts over
+            verifier.verify(target);
+            return null;
+        });
+    }
+
+}
@@ -0,0 +1,301 @@
+package land.oras.progress;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.FileSystemException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Aborts transfers whose throughput stays below a floor for a whole window.
+ * A stalled transfer gets its stream closed and its thread interrupted, which unblocks reads on half-dead connections,
+ * and {@link #call(int, Attempt)} then retries it.
+ */
+public final class StallWatchdog implements AutoCloseable {
+
+    /**
+     * Logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(StallWatchdog.class);
+
+    /**
+     * Interval between throughput checks
+     */
+    private static final Duration CHECK_INTERVAL = Duration.ofSeconds(1);
+
+    /**
+     * Once a stream transfer proved faster, its floor rises to this fraction of the best windowed rate seen
+     */
+    private static final double ADAPTIVE_FRACTION = 0.01;
+
+    /**
+     * Base delay between attempts, multiplied by the attempt number
+     */
+    private static final Duration BACKOFF = Duration.ofMillis(500);
+
+    private final long minBytesPerSecond;
+    private final long windowNanos;
+    private final long deadlineNanos;
+    private final Set<Guard> guards = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService checker;
+
+    /**
+     * Create a watchdog
+     * @param minBytesPerSecond The throughput floor, 0 to never abort
+     * @param window The window over which the throughput must stay below the floor
+     */
+    public StallWatchdog(long minBytesPerSecond, Duration window) {
+        this(minBytesPerSecond, window, Duration.ZERO);
+    }
+
+    /**
+     * Create a watchdog also aborting attempts that last longer than a deadline, for transfers without any byte count
+     * @param minBytesPerSecond The throughput floor, 0 to never abort on throughput
+     * @param window The window over which the throughput must stay below the floor
+     * @param deadline The maximum duration of an attempt, zero for none
+     */
+    public StallWatchdog(long minBytesPerSecond, Duration window, Duration deadline) {
+        this.minBytesPerSecond = minBytesPerSecond;
+        this.windowNanos = window.toNanos();
+        this.deadlineNanos = deadline.toNanos();
+        if (minBytesPerSecond <= 0 && deadlineNanos <= 0) {
+            this.checker = null;
+            return;
+        }
+        this.checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oras-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = CHECK_INTERVAL.toMillis();
+        this.checker.scheduleAtFixedRate(() -> check(System.nanoTime()), millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A single attempt of a guarded transfer
+     * @param <T> The result type
+     */
+    @FunctionalInterface
+    public interface Attempt<T> {
+
+        /**
+         * Run the attempt
+         * @param guard The guard watching this attempt
+         * @param attempt The attempt number, starting at 1
+         * @return The result
+         * @throws Exception On failure
+         */
+        T run(Guard guard, int attempt) throws Exception;
+    }
+
+    /**
+     * Run a transfer, retrying it when it stalled, exceeded the deadline or failed with a transient I/O error
+     * @param retries The number of retries after the first attempt
+     * @param attempt The transfer
+     * @param <T> The result type
+     * @return The result of the first successful attempt
+     * @throws Exception The failure of the last attempt, or of any attempt that did not stall nor fail transiently
+     */
+    public <T> T call(int retries, Attempt<T> attempt) throws Exception {
+        for (int number = 1; ; number++) {
+            Guard guard = guard();
+            Exception failure;
+            try {
+                return attempt.run(guard, number);
+            }
+            catch (Exception e) {
+                failure = e;
+            }
+            finally {
+                guard.close();
+                if (guard.stalled()) {
+                    // Clear the interrupt used to abort the attempt, which may land after the attempt already returned
+                    Thread.interrupted();
+                }
+            }
+            if ((!guard.stalled() && !isTransient(failure)) || number > retries) {
+                throw failure;
+            }
+            if (guard.expired) {
+                LOG.warn("Transfer exceeded {}s, retrying ({}/{})", Duration.ofNanos(deadlineNanos).toSeconds(), number, retries);
+            }
+            else if (guard.stalled()) {
+                LOG.warn("Transfer stalled below {} B/s for {}s, retrying ({}/{})",
+                        guard.floor, Duration.ofNanos(windowNanos).toSeconds(), number, retries);
+            }
+            else {
+                LOG.warn("Transfer failed: {}, retrying ({}/{})", failure.getMessage(), number, retries);
+            }
+            Thread.sleep(BACKOFF.toMillis() * number);
+        }
+    }
+
+    /**
+     * Whether a failure may clear on retry. Local file system errors and interrupts do not.
+     * @param e The failure
+     * @return True for network and other transient I/O failures
+     */
+    static boolean isTransient(Exception e) {
+        return e instanceof IOException && !(e instanceof FileSystemException) && !(e instanceof InterruptedIOException);
+    }
+
+    /**
+     * Guard the current thread. Bytes are counted by {@link Guard#monitor(InputStream)} unless {@link Guard#watch(LongSupplier)} is used.
+     * @return The guard, to close once the transfer is over
+     */
+    public Guard guard() {
+        Guard guard = new Guard(Thread.currentThread());
+        if (checker != null) {
+            guards.add(guard);
+        }
+        return guard;
+    }
+
+    void check(long now) {
+        for (Guard guard : guards) {
+            guard.check(now);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+    }
+
+    /**
+     * Watches the throughput of one transfer attempt
+     */
+    public final class Guard implements AutoCloseable {
+
+        private final Thread thread;
+        private final long startNanos = System.nanoTime();
+        private final Transfer counter = new Transfer("watchdog", -1, null);
+        private final Deque<long[]> samples = new ArrayDeque<>();
+        private volatile LongSupplier bytes = counter::bytes;
+        private volatile Closeable resource;
+        private volatile boolean adaptive;
+        private volatile boolean stalled;
+        private volatile boolean expired;
+        private volatile boolean paused;
+        private long floor = minBytesPerSecond;
+        private boolean closed;
+
+        private Guard(Thread thread) {
+            this.thread = thread;
+        }
+
+        /**
+         * Count the bytes read from a stream. The stream is closed if the transfer stalls.
+         * @param in The stream
+         * @return The counting stream
+         */
+        public InputStream monitor(InputStream in) {
+            this.resource = in;
+            this.adaptive = true;
+            return new ProgressInputStream(in, counter);
+        }
+
+        /**
+         * Sample the bytes from another source, for transfers performed by the SDK
+         * @param bytes The byte source
+         */
+        public void watch(LongSupplier bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Stop measuring the throughput, while the attempt does local work such as hashing what is already on disk
+         */
+        public void pause() {
+            this.paused = true;
+        }
+
+        /**
+         * Measure the throughput again, over a new window starting now
+         */
+        public synchronized void resume() {
+            samples.clear();
+            this.paused = false;
+        }
+
+        /**
+         * @return True if the transfer was aborted because it stalled or exceeded the deadline
+         */
+        public boolean stalled() {
+            return stalled;
+        }
+
+        private synchronized void check(long now) {
+            if (closed) {
+                return;
+            }
+            if (deadlineNanos > 0 && now - startNanos >= deadlineNanos) {
+                expired = true;
+                abort(-1);
+                return;
+            }
+            if (minBytesPerSecond <= 0 || paused) {
+                samples.clear();
+                return;
+            }
+            long current = bytes.getAsLong();
+            // Keep the most recent sample that is at least a window old as the baseline
+            long[] baseline = null;
+            while (!samples.isEmpty() && now - samples.peekFirst()[0] >= windowNanos) {
+                baseline = samples.pollFirst();
+            }
+            samples.addLast(new long[] { now, current });
+            if (baseline == null) {
+                return;
+            }
+            samples.addFirst(baseline);
+            double rate = (current - baseline[1]) * 1_000_000_000d / (now - baseline[0]);
+            if (rate < floor) {
+                abort(rate);
+            }
+            else if (adaptive) {
+                floor = Math.max(floor, (long) (rate * ADAPTIVE_FRACTION));
+            }
+        }
+
+        private void abort(double rate) {
+            if (!expired) {
+                LOG.debug("Aborting transfer at {} B/s, floor is {} B/s", (long) rate, floor);
+            }
+            stalled = true;
+            closed = true;
+            guards.remove(this);
+            Closeable closeable = resource;
+            if (closeable != null) {
+                try {
+                    closeable.close();
+                }
+                catch (IOException e) {
+                    LOG.debug("Failed to close stalled stream", e);
+                }
+            }
+            thread.interrupt();
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            guards.remove(this);
+        }
+    }
+
+}
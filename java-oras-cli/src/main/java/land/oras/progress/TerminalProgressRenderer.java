@@ -0,0 +1,145 @@
+package land.oras.progress;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Live view redrawn in place on a terminal, one line per transfer and one aggregate line.
+ * Log lines go through {@link #writeAbove(Runnable)}, which erases the frame so it is redrawn below them.
+ */
+public class TerminalProgressRenderer implements ProgressRenderer {
+
+    /**
+     * Maximum number of per-transfer lines to draw
+     */
+    private static final int MAX_LINES = 10;
+
+    private static final int BAR_WIDTH = 20;
+
+    /**
+     * Lock shared by frames and log lines written on the same terminal
+     */
+    private static final Object TERMINAL = new Object();
+
+    /**
+     * Renderer whose frame is on screen, if any
+     */
+    private static TerminalProgressRenderer active;
+
+    private final PrintStream out;
+
+    // Number of lines drawn by the previous frame
+    private int drawn;
+
+    public TerminalProgressRenderer(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void render(ProgressSnapshot snapshot) {
+        synchronized (TERMINAL) {
+            active = this;
+            draw(snapshot);
+        }
+    }
+
+    private void draw(ProgressSnapshot snapshot) {
+        List<ProgressSnapshot.Sample> visible = snapshot.transfers();
+        if (visible.size() > MAX_LINES) {
+            visible = visible.stream().filter(sample -> !sample.done()).limit(MAX_LINES).toList();
+        }
+        StringBuilder frame = new StringBuilder();
+        if (drawn > 0) {
+            // Move back to the first line of the previous frame
+            frame.append("\033[").append(drawn).append('F');
+        }
+        for (ProgressSnapshot.Sample sample : visible) {
+            frame.append("\033[2K").append(line(sample)).append('\n');
+        }
+        frame.append("\033[2K").append(line(snapshot.total())).append('\n');
+        // Clear leftovers when the frame shrinks
+        int lines = visible.size() + 1;
+        for (int i = lines; i < drawn; i++) {
+            frame.append("\033[2K\n");
+        }
+        drawn = Math.max(lines, drawn);
+        out.print(frame);
+        out.flush();
+    }
+
+    @Override
+    public void finish(ProgressSnapshot snapshot) {
+        synchronized (TERMINAL) {
+            draw(snapshot);
+            drawn = 0;
+            if (active == this) {
+                active = null;
+            }
+        }
+    }
+
+    /**
+     * Write to the terminal above the live frame. The frame is erased first and redrawn on the next tick.
+     * @param write Writes the lines
+     */
+    public static void writeAbove(Runnable write) {
+        synchronized (TERMINAL) {
+            TerminalProgressRenderer renderer = active;
+            if (renderer != null && renderer.drawn > 0) {
+                renderer.out.print("\033[" + renderer.drawn + "F\033[J");
+                renderer.out.flush();
+                renderer.drawn = 0;
+            }
+            write.run();
+        }
+    }
+
+    private static String line(ProgressSnapshot.Sample sample) {
+        return String.format(Locale.ROOT, "%-24.24s %s %10s / %-10s %10s/s  %s",
+                sample.name(),
+                bar(sample.fraction()),
+                humanBytes(sample.bytes()),
+                sample.size() < 0 ? "?" : humanBytes(sample.size()),
+                humanBytes((long) sample.bytesPerSecond()),
+                sample.done() ? "done" : "ETA " + duration(sample.etaSeconds()));
+    }
+
+    private static String bar(double fraction) {
+        if (fraction < 0) {
+            return "[" + " ".repeat(BAR_WIDTH) + "]";
+        }
+        int filled = (int) Math.round(fraction * BAR_WIDTH);
+        return "[" + "#".repeat(filled) + ".".repeat(BAR_WIDTH - filled) + "]";
+    }
+
+    /**
+     * Format a byte count with binary units
+     * @param bytes The byte count
+     * @return The formatted value
+     */
+    static String humanBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        String units = "KMGTPE";
+        int unit = (63 - Long.numberOfLeadingZeros(bytes)) / 10;
+        return String.format(Locale.ROOT, "%.1f %siB", bytes / (double) (1L << (unit * 10)), units.charAt(unit - 1));
+    }
+
+    /**
+     * Format a number of seconds as h:mm:ss
+     * @param seconds The seconds, or -1 if unknown
+     * @return The formatted value
+     */
+    static String duration(long seconds) {
+        if (seconds < 0) {
+            return "--:--";
+        }
+        if (seconds >= 3600) {
+            return String.format(Locale.ROOT, "%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+        }
+        return String.format(Locale.ROOT, "%02d:%02d", seconds / 60, seconds % 60);
+    }
+
+}
@@ -0,0 +1,141 @@
+package land.oras.progress;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * A single tracked transfer, usually one blob or layer.
+ * Bytes are either counted by stream wrappers or read from a probe when the transfer happens out of our hands.
+ */
+public final class Transfer {
+
+    /**
+     * Weight of the latest sample in the smoothed rate
+     */
+    private static final double SMOOTHING = 0.3;
+
+    private final String name;
+    private final long size;
+    private final LongAdder bytes = new LongAdder();
+    private final LongSupplier probe;
+    private volatile boolean done;
+
+    // Only touched by the sampling thread
+    private long lastBytes;
+    private long lastNanos;
+    private double rate;
+
+    Transfer(String name, long size, LongSupplier probe) {
+        this.name = name;
+        this.size = size;
+        this.probe = probe;
+    }
+
+    /**
+     * Probe the size of a file, or the total size of the regular files below a directory
+     * @param path The path
+     * @return The probe
+     */
+    static LongSupplier sizeOf(Path path) {
+        return () -> {
+            try {
+                if (Files.isDirectory(path)) {
+                    try (Stream<Path> files = Files.walk(path)) {
+                        return files.filter(Files::isRegularFile).mapToLong(Transfer::sizeOrZero).sum();
+                    }
+                }
+                return sizeOrZero(path);
+            }
+            catch (IOException | UncheckedIOException e) {
+                return 0;
+            }
+        };
+    }
+
+    private static long sizeOrZero(Path path) {
+        try {
+            return Files.size(path);
+        }
+        catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Count transferred bytes
+     * @param count The number of bytes
+     */
+    public void add(long count) {
+        bytes.add(count);
+    }
+
+    /**
+     * Reset the count, when a transfer restarts or resumes
+     * @param offset The bytes already transferred
+     */
+    public void rewind(long offset) {
+        bytes.reset();
+        bytes.add(offset);
+    }
+
+    /**
+     * Mark the transfer as complete
+     */
+    public void complete() {
+        done = true;
+    }
+
+    /**
+     * @return The transfer name
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return The expected size, or -1 if unknown
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return The bytes transferred so far
+     */
+    public long bytes() {
+        long current = probe != null ? probe.getAsLong() : bytes.sum();
+        if (done && size >= 0) {
+            return size;
+        }
+        return current;
+    }
+
+    /**
+     * @return True once the transfer completed
+     */
+    public boolean done() {
+        return done;
+    }
+
+    /**
+     * Sample the transfer and update its smoothed rate
+     * @param now The sampling time in nanoseconds
+     * @return The sample
+     */
+    ProgressSnapshot.Sample sample(long now) {
+        long current = bytes();
+        if (lastNanos != 0 && now > lastNanos) {
+            double instant = (current - lastBytes) * 1_000_000_000d / (now - lastNanos);
+            rate = rate == 0 ? instant : rate * (1 - SMOOTHING) + instant * SMOOTHING;
+        }
+        lastBytes = current;
+        lastNanos = now;
+        return new ProgressSnapshot.Sample(name, current, size, done ? 0 : rate, done);
+    }
+
+}
@@ -0,0 +1,158 @@
+package land.oras.progress;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the transfers of a command and renders them periodically.
+ * Counters are only sampled on a timer, so the hot read and write paths only pay for a {@link java.util.concurrent.atomic.LongAdder} increment.
+ */
+public final class TransferProgress implements AutoCloseable {
+
+    /**
+     * Redraw interval on a terminal
+     */
+    private static final Duration TTY_INTERVAL = Duration.ofMillis(250);
+
+    /**
+     * Interval between machine-readable events
+     */
+    private static final Duration EVENTS_INTERVAL = Duration.ofSeconds(2);
+
+    private final List<Transfer> transfers = new CopyOnWriteArrayList<>();
+    private final Transfer total = new Transfer("total", -1, this::bytes);
+    private final ProgressRenderer renderer;
+    private final ScheduledExecutorService sampler;
+    private final long startNanos = System.nanoTime();
+
+    TransferProgress(ProgressRenderer renderer, Duration interval) {
+        this.renderer = renderer;
+        if (renderer == null) {
+            this.sampler = null;
+            return;
+        }
+        this.sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oras-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        this.sampler.scheduleAtFixedRate(this::render, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Start tracking progress
+     * @param mode The progress mode
+     * @return The progress tracker, to be closed once the transfers are over
+     */
+    public static TransferProgress start(ProgressMode mode) {
+        return switch (mode.resolve()) {
+            case TTY -> new TransferProgress(new TerminalProgressRenderer(System.err), TTY_INTERVAL);
+            case EVENTS -> new TransferProgress(new EventProgressRenderer(System.err), EVENTS_INTERVAL);
+            default -> new TransferProgress(null, null);
+        };
+    }
+
+    /**
+     * Track a transfer whose bytes are counted by {@link ProgressInputStream}
+     * @param name The transfer name
+     * @param size The expected size, or -1 if unknown
+     * @return The transfer
+     */
+    public Transfer track(String name, long size) {
+        Transfer transfer = new Transfer(name, size, null);
+        transfers.add(transfer);
+        return transfer;
+    }
+
+    /**
+     * Track a transfer performed by the SDK by sampling the size of its destination on disk
+     * @param name The transfer name
+     * @param size The expected size, or -1 if unknown
+     * @param path The destination file or directory
+     * @return The transfer
+     */
+    public Transfer probe(String name, long size, Path path) {
+        Transfer transfer = new Transfer(name, size, Transfer.sizeOf(path));
+        transfers.add(transfer);
+        return transfer;
+    }
+
+    /**
+     * Mark all tracked transfers as complete
+     */
+    public void completeAll() {
+        transfers.forEach(Transfer::complete);
+    }
+
+    /**
+     * @return The bytes transferred so far by all transfers
+     */
+    public long bytes() {
+        long bytes = 0;
+        for (Transfer transfer : transfers) {
+            bytes += transfer.bytes();
+        }
+        return bytes;
+    }
+
+    private long totalSize() {
+        long size = 0;
+        for (Transfer transfer : transfers) {
+            if (transfer.size() < 0) {
+                return -1;
+            }
+            size += transfer.size();
+        }
+        return size;
+    }
+
+    /**
+     * Sample all transfers
+     * @return The snapshot
+     */
+    synchronized ProgressSnapshot snapshot() {
+        long now = System.nanoTime();
+        List<ProgressSnapshot.Sample> samples = new ArrayList<>(transfers.size());
+        boolean done = !transfers.isEmpty();
+        for (Transfer transfer : transfers) {
+            ProgressSnapshot.Sample sample = transfer.sample(now);
+            samples.add(sample);
+            done &= sample.done();
+        }
+        ProgressSnapshot.Sample aggregate = total.sample(now);
+        aggregate = new ProgressSnapshot.Sample(aggregate.name(), aggregate.bytes(), totalSize(), done ? 0 : aggregate.bytesPerSecond(), done);
+        return new ProgressSnapshot(now - startNanos, samples, aggregate);
+    }
+
+    private void render() {
+        if (transfers.isEmpty()) {
+            return;
+        }
+        renderer.render(snapshot());
+    }
+
+    @Override
+    public void close() {
+        if (sampler == null) {
+            return;
+        }
+        sampler.shutdownNow();
+        try {
+            sampler.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!transfers.isEmpty()) {
+            renderer.finish(snapshot());
+        }
+    }
+
+}
@@ -4,6 +4,7 @@ import land.oras.ContainerRef;
 import land.oras.LocalPath;
 import land.oras.Manifest;
 import land.oras.Registry;
+import land.oras.registry.EmbeddedRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -15,18 +16,19 @@ public class ExampleTest {
     private Path blobDir;
 
     @Test
-    public void test() {
-
-        // Push
-        Path artifact = Path.of("pom.xml");
-        Registry registry = Registry.Builder.builder()
-                .withInsecure(true)
-                .build();
-        Manifest manifest = registry.pushArtifact(ContainerRef.parse("localhost:5000/hello:v1"), LocalPath.of(artifact, "application/xml"));
-
-        // Pull
-        registry.pullArtifact(ContainerRef.parse("localhost:5000/hello:v1"), blobDir, true);
-
+    public void test() throws Exception {
+        try (EmbeddedRegistry embedded = EmbeddedRegistry.start()) {
+
+            // Push
+            Path artifact = Path.of("pom.xml");
+            Registry registry = Registry.Builder.builder()
+                    .withInsecure(true)
+                    .build();
+            Manifest manifest = registry.pushArtifact(ContainerRef.parse(embedded.address() + "/hello:v1"), LocalPath.of(artifact, "application/xml"));
+
+            // Pull
+            registry.pullArtifact(ContainerRef.parse(embedded.address() + "/hello:v1"), blobDir, true);
+        }
     }
 
 }
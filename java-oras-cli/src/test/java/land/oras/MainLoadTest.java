@@ -0,0 +1,335 @@
+package land.oras;
+
+import land.oras.registry.EmbeddedRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives the CLI subcommands with many parallel invocations against an {@link EmbeddedRegistry}
+ */
+@Tag("load")
+public class MainLoadTest {
+
+    private static final int INVOCATIONS = 16;
+    private static final int FILE_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Size of the files whose transfers are held to the heap ceiling
+     */
+    private static final int LARGE_FILE_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Minimum aggregate throughput of a fault-free run, far below what loopback achieves
+     */
+    private static final long THROUGHPUT_FLOOR = 8L * 1024 * 1024;
+
+    /**
+     * Maximum live heap during a run, below the large files of all invocations: transfers must stream rather than buffer whole blobs
+     */
+    private static final long HEAP_CEILING = 192L * 1024 * 1024;
+
+    private static final Duration INVOCATION_TIMEOUT = Duration.ofMinutes(2);
+
+    @TempDir
+    private Path dir;
+
+    private EmbeddedRegistry registry;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void start() throws Exception {
+        registry = EmbeddedRegistry.start();
+        executor = Executors.newFixedThreadPool(INVOCATIONS);
+    }
+
+    @AfterEach
+    public void stop() throws Exception {
+        executor.shutdownNow();
+        registry.close();
+    }
+
+    @Test
+    public void shouldPushAndPullInParallel() throws Exception {
+        List<Path> files = createFiles("artifact", INVOCATIONS, LARGE_FILE_SIZE);
+        assertTrue((long) INVOCATIONS * LARGE_FILE_SIZE > HEAP_CEILING);
+
+        HeapMonitor heap = new HeapMonitor();
+        long start = System.nanoTime();
+        assertAllSucceed(parallel(files.size(), i -> run("push", "--insecure", "--progress", "none",
+                "--file", files.get(i).toString(), registry.address() + "/load/push:" + i)));
+        assertAllSucceed(parallel(files.size(), i -> run("pull", "--insecure", "--progress", "none",
+                "--output", dir.resolve("pull-" + i).toString(), registry.address() + "/load/push:" + i)));
+        long elapsed = System.nanoTime() - start;
+        heap.close();
+
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(-1, Files.mismatch(files.get(i), dir.resolve("pull-" + i).resolve(files.get(i).getFileName())));
+        }
+        assertThroughput(2L * INVOCATIONS * LARGE_FILE_SIZE, elapsed);
+        heap.assertBelow(HEAP_CEILING);
+    }
+
+    @Test
+    public void shouldPushCompressedInParallel() throws Exception {
+        List<Path> files = createFiles("compressed", INVOCATIONS, FILE_SIZE);
+
+        assertAllSucceed(parallel(files.size(), i -> run("push", "--insecure", "--progress", "none",
+                "--compress", i % 2 == 0 ? "zstd" : "gzip",
+                "--file", files.get(i).toString(), registry.address() + "/load/compressed:" + i)));
+        assertAllSucceed(parallel(files.size(), i -> run("pull", "--insecure", "--progress", "none",
+                "--output", dir.resolve("pull-" + i).toString(), registry.address() + "/load/compressed:" + i)));
+
+        for (int i = 0; i < files.size(); i++) {
+            String manifest = registry.manifest("load/compressed", String.valueOf(i));
+            assertTrue(manifest.contains(i % 2 == 0 ? "+zstd\"" : "+gzip\""), manifest);
+            assertTrue(manifest.contains(i % 2 == 0 ? "\"land.oras.cli.compression\":\"zstd\"" : "\"land.oras.cli.compression\":\"gzip\""), manifest);
+            assertArrayEquals(Files.readAllBytes(files.get(i)), Files.readAllBytes(dir.resolve("pull-" + i).resolve(files.get(i).getFileName())));
+        }
+        assertTrue(registry.bytesReceived() < (long) INVOCATIONS * FILE_SIZE / 2,
+                "uploaded %d bytes".formatted(registry.bytesReceived()));
+    }
+
+    @Test
+    public void shouldResumeDroppedBlobFetches() throws Exception {
+        List<Path> files = createFiles("blob", INVOCATIONS, FILE_SIZE);
+        assertAllSucceed(parallel(files.size(), i -> run("blob-push", "--insecure", "--progress", "none",
+                "--file", files.get(i).toString(), registry.address() + "/load/blobs")));
+
+        registry.dropEvery(3);
+        long sent = registry.bytesSent();
+        assertAllSucceed(parallel(files.size(), i -> run("blob-fetch", "--insecure", "--progress", "none", "--retries", "10",
+                "--output", dir.resolve("fetched-" + i).toString(),
+                registry.address() + "/load/blobs@" + digest(files.get(i)))));
+        sent = registry.bytesSent() - sent;
+
+        // A drop cuts a blob at half, restarting from zero would send that half again
+        assertTrue(registry.dropped() > 0);
+        long overhead = sent - (long) INVOCATIONS * FILE_SIZE;
+        assertTrue(overhead < registry.dropped() * FILE_SIZE / 4,
+                "sent %d bytes over the blobs for %d drops".formatted(overhead, registry.dropped()));
+        for (int i = 0; i < files.size(); i++) {
+            assertArrayEquals(Files.readAllBytes(files.get(i)), Files.readAllBytes(dir.resolve("fetched-" + i)));
+        }
+    }
+
+    @Test
+    public void shouldBoundStalledFetches() throws Exception {
+        Path file = createFiles("slow", 1, 1024 * 1024).get(0);
+        String ref = registry.address() + "/load/slow@" + digest(file);
+        assertEquals(0, run("blob-push", "--insecure", "--progress", "none", "--file", file.toString(), registry.address() + "/load/slow"));
+
+        // Slower than the floor: every attempt is aborted, the command fails in bounded time
+        registry.bandwidth(32 * 1024);
+        long start = System.nanoTime();
+        List<Future<Integer>> stalled = parallel(4, i -> run("blob-fetch", "--insecure", "--progress", "none",
+                "--min-rate", "262144", "--stall-timeout", "2", "--retries", "1",
+                "--output", dir.resolve("stalled-" + i).toString(), ref));
+        for (Future<Integer> result : stalled) {
+            assertNotEquals(0, result.get(INVOCATION_TIMEOUT.toSeconds(), TimeUnit.SECONDS));
+        }
+        long seconds = Duration.ofNanos(System.nanoTime() - start).toSeconds();
+        assertTrue(seconds < 20, "stalled fetches took %ds".formatted(seconds));
+
+        // Slow but above the floor: completes
+        registry.bandwidth(512 * 1024);
+        assertAllSucceed(parallel(4, i -> run("blob-fetch", "--insecure", "--progress", "none",
+                "--min-rate", "65536", "--stall-timeout", "2",
+                "--output", dir.resolve("slow-" + i).toString(), ref)));
+        for (int i = 0; i < 4; i++) {
+            assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(dir.resolve("slow-" + i)));
+        }
+    }
+
+    @Test
+    public void shouldSurviveThrottlingAndLatency() throws Exception {
+        List<Path> files = createFiles("throttled", INVOCATIONS, 256 * 1024);
+
+        registry.throttleEvery(20).latency(Duration.ofMillis(5));
+        List<Future<Integer>> results = parallel(files.size(), i -> run("push", "--insecure", "--progress", "none",
+                "--file", files.get(i).toString(), registry.address() + "/load/throttled:" + i));
+        List<Integer> pushed = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            // Every invocation terminates, whether or not it got through
+            if (results.get(i).get(INVOCATION_TIMEOUT.toSeconds(), TimeUnit.SECONDS) == 0) {
+                pushed.add(i);
+            }
+        }
+        // Each failed push is explained by a 429, the other pushes went through
+        assertTrue(registry.throttled() > 0);
+        assertTrue(INVOCATIONS - pushed.size() <= registry.throttled(),
+                "%d pushes failed for %d throttled requests".formatted(INVOCATIONS - pushed.size(), registry.throttled()));
+        assertTrue(pushed.size() >= INVOCATIONS / 2, "only %d pushes succeeded".formatted(pushed.size()));
+
+        // Whatever was reported as pushed is intact
+        registry.healthy();
+        for (int i : pushed) {
+            Path output = dir.resolve("pull-" + i);
+            assertEquals(0, run("pull", "--insecure", "--progress", "none", "--output", output.toString(), registry.address() + "/load/throttled:" + i));
+            assertArrayEquals(Files.readAllBytes(files.get(i)), Files.readAllBytes(output.resolve(files.get(i).getFileName())));
+        }
+    }
+
+    @Test
+    public void shouldCopyAndDiscoverInParallel() throws Exception {
+        List<Path> files = createFiles("copy", INVOCATIONS, 512 * 1024);
+        assertAllSucceed(parallel(files.size(), i -> run("push", "--insecure", "--progress", "none",
+                "--file", files.get(i).toString(), registry.address() + "/load/source:" + i)));
+
+        assertAllSucceed(parallel(files.size(), i -> run("copy", "--source-insecure", "--target-insecure",
+                registry.address() + "/load/source:" + i, registry.address() + "/load/target:" + i)));
+        assertAllSucceed(parallel(files.size(), i -> run("attach", "--insecure", "--artifact-type", "application/vnd.test.sbom",
+                "--file", files.get(i).toString(), registry.address() + "/load/target:" + i)));
+        assertAllSucceed(parallel(files.size(), i -> run("discover", "--insecure", registry.address() + "/load/target:" + i)));
+        assertAllSucceed(parallel(files.size(), i -> run("copy-oci", "--insecure", "--progress", "none",
+                "--output", dir.resolve("layout-" + i).toString(), registry.address() + "/load/target:" + i)));
+
+        for (int i = 0; i < files.size(); i++) {
+            String source = registry.manifest("load/source", String.valueOf(i));
+            assertEquals(source, registry.manifest("load/target", String.valueOf(i)));
+            assertTrue(Files.exists(dir.resolve("layout-" + i).resolve("index.json")));
+        }
+    }
+
+    private static int run(String... args) {
+        return new CommandLine(new Main()).setCaseInsensitiveEnumValuesAllowed(true).execute(args);
+    }
+
+    private interface Invocation {
+        int run(int index) throws Exception;
+    }
+
+    private List<Future<Integer>> parallel(int count, Invocation invocation) {
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            Callable<Integer> task = () -> invocation.run(index);
+            results.add(executor.submit(task));
+        }
+        return results;
+    }
+
+    private static void assertAllSucceed(List<Future<Integer>> results) throws Exception {
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(0, results.get(i).get(INVOCATION_TIMEOUT.toSeconds(), TimeUnit.SECONDS), "invocation " + i);
+        }
+    }
+
+    private static void assertThroughput(long bytes, long nanos) {
+        long bytesPerSecond = bytes * 1_000_000_000L / Math.max(1, nanos);
+        assertTrue(bytesPerSecond >= THROUGHPUT_FLOOR, "throughput %d B/s below %d B/s".formatted(bytesPerSecond, THROUGHPUT_FLOOR));
+    }
+
+    /**
+     * Create text-like files, compressible and distinct
+     */
+    private List<Path> createFiles(String prefix, int count, int size) throws Exception {
+        String[] words = { "layer", "manifest", "digest", "registry", "blob", "config", "annotation", "\n" };
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Random random = new Random(i);
+            Path file = dir.resolve("%s-%d.txt".formatted(prefix, i));
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+                byte[] header = (prefix + i + "\n").getBytes(StandardCharsets.UTF_8);
+                out.write(header);
+                for (int written = header.length; written < size; ) {
+                    byte[] word = (words[random.nextInt(words.length)] + " ").getBytes(StandardCharsets.UTF_8);
+                    int length = Math.min(word.length, size - written);
+                    out.write(word, 0, length);
+                    written += length;
+                }
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    private static String digest(Path file) throws Exception {
+        return "sha256:" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file)));
+    }
+
+    /**
+     * Samples the heap left after the latest collection, which tracks the live set rather than garbage.
+     * Pools report nothing until a collection ran, so a run without any collection measured nothing and fails.
+     */
+    private static final class HeapMonitor implements AutoCloseable {
+
+        private final AtomicLong peak = new AtomicLong();
+        private final long collections = collections();
+        private final Thread thread;
+
+        private HeapMonitor() {
+            thread = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    long used = 0;
+                    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                        MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+                        if (usage != null) {
+                            used += usage.getUsed();
+                        }
+                    }
+                    peak.accumulateAndGet(used, Math::max);
+                    try {
+                        Thread.sleep(20);
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "heap-monitor");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void assertBelow(long ceiling) {
+            assertTrue(collections() > collections, "no garbage collection during the run, the live heap was not measured");
+            assertTrue(peak.get() <= ceiling, "live heap peaked at %d bytes, above %d".formatted(peak.get(), ceiling));
+        }
+
+        private static long collections() {
+            long count = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, collector.getCollectionCount());
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+}
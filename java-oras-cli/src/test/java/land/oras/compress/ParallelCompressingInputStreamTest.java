@@ -0,0 +1,134 @@
+package land.oras.compress;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParallelCompressingInputStreamTest {
+
+    @Test
+    public void shouldRoundTripGzipBlocks() throws Exception {
+        byte[] data = textLike(5 * Compression.GZIP.blockSize() + 123);
+        byte[] compressed = compress(data, Compression.GZIP, 4);
+        assertTrue(compressed.length < data.length / 4, "compressed to " + compressed.length);
+        assertArrayEquals(data, decompress(compressed, Compression.GZIP));
+    }
+
+    @Test
+    public void shouldRoundTripZstdFrames() throws Exception {
+        byte[] data = textLike(3 * Compression.ZSTD.blockSize() + 7);
+        byte[] compressed = compress(data, Compression.ZSTD, 3);
+        assertTrue(compressed.length < data.length / 4, "compressed to " + compressed.length);
+        assertArrayEquals(data, decompress(compressed, Compression.ZSTD));
+    }
+
+    @Test
+    public void shouldCompressEmptyStream() throws Exception {
+        for (Compression compression : Compression.values()) {
+            byte[] compressed = compress(new byte[0], compression, 2);
+            assertTrue(compressed.length > 0, compression.name());
+            assertEquals(0, decompress(compressed, compression).length);
+        }
+    }
+
+    @Test
+    public void shouldBoundReadAheadWhateverTheThreads() throws Exception {
+        ZeroInputStream source = new ZeroInputStream();
+        try (InputStream input = new ParallelCompressingInputStream(source, Compression.GZIP, 64)) {
+            input.read();
+            assertTrue(source.count <= ParallelCompressingInputStream.MAX_IN_FLIGHT_BYTES, "read ahead " + source.count);
+        }
+    }
+
+    @Test
+    public void shouldFailReaderWhenClosedFromAnotherThread() throws Exception {
+        InputStream input = new ParallelCompressingInputStream(new ZeroInputStream(), Compression.GZIP, 4);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            try {
+                while (input.read(buffer) != -1) {
+                    // Endless source
+                }
+            }
+            catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        Thread.sleep(200);
+        input.close();
+        reader.join(5000);
+
+        assertFalse(reader.isAlive());
+        assertInstanceOf(IOException.class, failure.get());
+        assertThrows(IOException.class, input::read);
+    }
+
+    @Test
+    public void shouldMapNames() {
+        assertEquals("application/vnd.oci.image.layer.v1.tar+zstd", Compression.ZSTD.mediaType("application/vnd.oci.image.layer.v1.tar"));
+        assertEquals("application/json+gzip", Compression.GZIP.mediaType("application/json+gzip"));
+        assertEquals(Compression.GZIP, Compression.fromName(Compression.GZIP.getName()));
+        assertEquals(Compression.ZSTD, Compression.fromName("zstd"));
+        assertEquals(null, Compression.fromName("br"));
+        assertEquals(null, Compression.fromName(null));
+    }
+
+    private static byte[] compress(byte[] data, Compression compression, int threads) throws IOException {
+        try (InputStream input = new ParallelCompressingInputStream(new ByteArrayInputStream(data), compression, threads)) {
+            return input.readAllBytes();
+        }
+    }
+
+    private static byte[] decompress(byte[] data, Compression compression) throws IOException {
+        try (InputStream input = compression.decompress(new ByteArrayInputStream(data))) {
+            return input.readAllBytes();
+        }
+    }
+
+    /**
+     * Endless zeros, counting the bytes read
+     */
+    private static class ZeroInputStream extends InputStream {
+
+        private volatile long count;
+
+        @Override
+        public int read() {
+            count++;
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            Arrays.fill(b, off, off + len, (byte) 0);
+            count += len;
+            return len;
+        }
+    }
+
+    private static byte[] textLike(int size) {
+        String[] words = { "layer", "manifest", "digest", "sha256", "registry", "blob", "config", "\n" };
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(size);
+        while (text.length() < size) {
+            text.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        return text.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,82 @@
+package land.oras.progress;
+
+import land.oras.ContainerRef;
+import land.oras.auth.UsernamePasswordProvider;
+import land.oras.registry.EmbeddedRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RangedBlobFetchTest {
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @Test
+    public void shouldExchangeCredentialsForBearerToken() throws Exception {
+        byte[] blob = blob();
+        try (EmbeddedRegistry registry = EmbeddedRegistry.start();
+             RangedBlobFetch fetch = new RangedBlobFetch(ContainerRef.parse(registry.address() + "/ranged"),
+                     new UsernamePasswordProvider("user", "secret"), true)) {
+            String digest = push(registry, blob);
+            String basic = "Basic " + Base64.getEncoder().encodeToString("user:secret".getBytes(StandardCharsets.UTF_8));
+            registry.bearer(basic, "pull-token");
+
+            ResumableDownload.Source source = fetch.open(digest, 1000);
+            assertEquals(1000, source.position());
+            try (InputStream input = source.input()) {
+                assertArrayEquals(Arrays.copyOfRange(blob, 1000, blob.length), input.readAllBytes());
+            }
+            // The token is reused by later requests
+            fetch.open(digest, 2000).input().close();
+            assertEquals(1, registry.tokensIssued());
+        }
+    }
+
+    @Test
+    public void shouldStartFromBeginningWhenRangeIgnored() throws Exception {
+        byte[] blob = blob();
+        try (EmbeddedRegistry registry = EmbeddedRegistry.start();
+             RangedBlobFetch fetch = new RangedBlobFetch(ContainerRef.parse(registry.address() + "/ranged"),
+                     new UsernamePasswordProvider("user", "secret"), true)) {
+            String digest = push(registry, blob);
+            registry.ignoreRanges(true);
+
+            ResumableDownload.Source source = fetch.open(digest, 1000);
+            assertEquals(0, source.position());
+            try (InputStream input = source.input()) {
+                assertArrayEquals(blob, input.readAllBytes());
+            }
+        }
+    }
+
+    private static byte[] blob() {
+        byte[] blob = new byte[8192];
+        for (int i = 0; i < blob.length; i++) {
+            blob[i] = (byte) i;
+        }
+        return blob;
+    }
+
+    private String push(EmbeddedRegistry registry, byte[] blob) throws Exception {
+        String digest = "sha256:" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(blob));
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(
+                        URI.create("http://%s/v2/ranged/blobs/uploads/?digest=%s".formatted(registry.address(), digest)))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(blob))
+                .build(), HttpResponse.BodyHandlers.discarding());
+        assertEquals(201, response.statusCode());
+        return digest;
+    }
+
+}
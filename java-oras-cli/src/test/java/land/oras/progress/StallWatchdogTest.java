@@ -0,0 +1,200 @@
+package land.oras.progress;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StallWatchdogTest {
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    public void shouldResumeStalledDownload() throws Exception {
+        byte[] blob = new byte[4096];
+        Arrays.fill(blob, (byte) 7);
+        List<Long> offsets = new ArrayList<>();
+        Path target = dir.resolve("blob");
+        Transfer transfer = new TransferProgress(null, null).track("blob", blob.length);
+
+        try (StallWatchdog watchdog = new StallWatchdog(1, Duration.ofSeconds(1))) {
+            ResumableDownload.download(watchdog, 1, offset -> {
+                offsets.add(offset);
+                if (offsets.size() == 1) {
+                    // Half of the blob, then a dead connection
+                    return new ResumableDownload.Source(
+                            new SequenceInputStream(new ByteArrayInputStream(blob, 0, 2048), new HangingInputStream()), 0);
+                }
+                return new ResumableDownload.Source(new ByteArrayInputStream(blob, (int) offset, blob.length - (int) offset), offset);
+            }, target, blob.length, sha256(blob), transfer);
+        }
+
+        assertEquals(List.of(0L, 2048L), offsets);
+        assertArrayEquals(blob, Files.readAllBytes(target));
+        assertEquals(blob.length, transfer.bytes());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void shouldSkipToOffsetWhenSourceCannotSeek() throws Exception {
+        byte[] blob = new byte[4096];
+        Arrays.fill(blob, (byte) 3);
+        AtomicInteger attempts = new AtomicInteger();
+        Path target = dir.resolve("blob");
+        Transfer transfer = new TransferProgress(null, null).track("blob", blob.length);
+
+        try (StallWatchdog watchdog = new StallWatchdog(1, Duration.ofSeconds(1))) {
+            ResumableDownload.download(watchdog, 1, offset -> {
+                if (attempts.incrementAndGet() == 1) {
+                    return new ResumableDownload.Source(
+                            new SequenceInputStream(new ByteArrayInputStream(blob, 0, 1000), new HangingInputStream()), 0);
+                }
+                // The whole blob again, like a registry ignoring the range
+                return new ResumableDownload.Source(new ByteArrayInputStream(blob), 0);
+            }, target, blob.length, sha256(blob), transfer);
+        }
+
+        assertArrayEquals(blob, Files.readAllBytes(target));
+        assertEquals(blob.length, transfer.bytes());
+    }
+
+    @Test
+    public void shouldNotStallWhilePaused() throws Exception {
+        try (StallWatchdog watchdog = new StallWatchdog(1, Duration.ofSeconds(1))) {
+            String result = watchdog.call(0, (guard, attempt) -> {
+                guard.pause();
+                Thread.sleep(2500);
+                guard.resume();
+                return "done";
+            });
+            assertEquals("done", result);
+        }
+    }
+
+    @Test
+    public void shouldRetryAttemptsPastDeadline() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        try (StallWatchdog watchdog = new StallWatchdog(0, Duration.ofSeconds(1), Duration.ofSeconds(1))) {
+            String result = watchdog.call(1, (guard, attempt) -> {
+                attempts.incrementAndGet();
+                if (attempt == 1) {
+                    Thread.sleep(Long.MAX_VALUE);
+                }
+                return "done";
+            });
+            assertEquals("done", result);
+            assertEquals(2, attempts.get());
+            assertFalse(Thread.currentThread().isInterrupted());
+        }
+    }
+
+    @Test
+    public void shouldRetryOnlyIoFailures() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        try (StallWatchdog watchdog = new StallWatchdog(0, Duration.ofSeconds(1))) {
+            assertThrows(IOException.class, () -> watchdog.call(2, (guard, attempt) -> {
+                attempts.incrementAndGet();
+                throw new IOException("connection reset");
+            }));
+            assertEquals(3, attempts.get());
+
+            attempts.set(0);
+            assertThrows(IllegalStateException.class, () -> watchdog.call(2, (guard, attempt) -> {
+                attempts.incrementAndGet();
+                throw new IllegalStateException("not found");
+            }));
+            assertEquals(1, attempts.get());
+
+            attempts.set(0);
+            assertThrows(AccessDeniedException.class, () -> watchdog.call(2, (guard, attempt) -> {
+                attempts.incrementAndGet();
+                throw new AccessDeniedException("blob");
+            }));
+            assertEquals(1, attempts.get());
+        }
+    }
+
+    @Test
+    public void shouldClearInterruptOfLateAbort() throws Exception {
+        try (StallWatchdog watchdog = new StallWatchdog(1, Duration.ofSeconds(1))) {
+            // The attempt ignores the interrupt and completes after being aborted
+            String result = watchdog.call(0, (guard, attempt) -> {
+                while (!guard.stalled()) {
+                    Thread.onSpinWait();
+                }
+                return "done";
+            });
+            assertEquals("done", result);
+            assertFalse(Thread.currentThread().isInterrupted());
+        }
+    }
+
+    @Test
+    public void shouldFailTruncatedDownload() throws Exception {
+        Path target = dir.resolve("blob");
+        Transfer transfer = new TransferProgress(null, null).track("blob", 10);
+        try (StallWatchdog watchdog = new StallWatchdog(0, Duration.ofSeconds(1))) {
+            IOException e = assertThrows(IOException.class, () ->
+                    ResumableDownload.download(watchdog, 0, offset -> new ResumableDownload.Source(new ByteArrayInputStream(new byte[4]), 0), target, 10, sha256(new byte[10]), transfer));
+            assertTrue(e.getMessage().contains("Expected 10 bytes but received 4"), e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldDeleteCorruptedDownload() throws Exception {
+        byte[] blob = new byte[4096];
+        byte[] corrupted = blob.clone();
+        corrupted[100] = 1;
+        Path target = dir.resolve("blob");
+        Transfer transfer = new TransferProgress(null, null).track("blob", blob.length);
+        try (StallWatchdog watchdog = new StallWatchdog(0, Duration.ofSeconds(1))) {
+            IOException e = assertThrows(IOException.class, () ->
+                    ResumableDownload.download(watchdog, 0, offset -> new ResumableDownload.Source(new ByteArrayInputStream(corrupted), 0), target, blob.length, sha256(blob), transfer));
+            assertTrue(e.getMessage().contains("Expected digest " + sha256(blob)), e.getMessage());
+            assertFalse(Files.exists(target));
+        }
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        return "sha256:" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    /**
+     * Never returns any byte until interrupted, like a read on a half-dead connection
+     */
+    private static class HangingInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+                return -1;
+            }
+            catch (InterruptedException e) {
+                throw new InterruptedIOException("interrupted");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package land.oras.progress;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransferProgressTest {
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    public void shouldCountStreamedBytes() throws Exception {
+        TransferProgress progress = new TransferProgress(null, null);
+        Transfer transfer = progress.track("layer", 1000);
+        try (InputStream input = new ProgressInputStream(new ByteArrayInputStream(new byte[600]), transfer)) {
+            input.transferTo(OutputStream.nullOutputStream());
+        }
+        try (InputStream input = new ProgressInputStream(new ByteArrayInputStream(new byte[600]), progress.track("copy", -1))) {
+            input.transferTo(OutputStream.nullOutputStream());
+        }
+
+        ProgressSnapshot snapshot = progress.snapshot();
+        assertEquals(600, snapshot.transfers().get(0).bytes());
+        assertEquals(600, snapshot.transfers().get(1).bytes());
+        assertEquals(1200, snapshot.total().bytes());
+        assertEquals(-1, snapshot.total().size());
+        assertFalse(snapshot.total().done());
+
+        progress.completeAll();
+        snapshot = progress.snapshot();
+        assertEquals(1000, snapshot.transfers().get(0).bytes());
+        assertTrue(snapshot.total().done());
+    }
+
+    @Test
+    public void shouldProbeFiles() throws Exception {
+        TransferProgress progress = new TransferProgress(null, null);
+        progress.probe("file", 10, dir.resolve("file"));
+        assertEquals(0, progress.snapshot().total().bytes());
+        Files.write(dir.resolve("file"), new byte[4]);
+        assertEquals(4, progress.snapshot().total().bytes());
+        assertEquals(10, progress.snapshot().total().size());
+    }
+
+    @Test
+    public void shouldEstimateRemainingTime() {
+        ProgressSnapshot.Sample sample = new ProgressSnapshot.Sample("layer", 100, 1100, 100, false);
+        assertEquals(10, sample.etaSeconds());
+        assertEquals(-1, new ProgressSnapshot.Sample("layer", 100, -1, 100, false).etaSeconds());
+        assertEquals(-1, new ProgressSnapshot.Sample("layer", 100, 1100, 0, false).etaSeconds());
+    }
+
+    @Test
+    public void shouldEmitJsonEvents() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TransferProgress progress = new TransferProgress(new EventProgressRenderer(new PrintStream(out, true, StandardCharsets.UTF_8)), Duration.ofHours(1));
+        progress.track("sha256:\"quoted\"", 5).add(5);
+        progress.close();
+        String event = out.toString(StandardCharsets.UTF_8).trim();
+        assertTrue(event.startsWith("{\"event\":\"complete\""), event);
+        assertTrue(event.contains("\"name\":\"sha256:\\\"quoted\\\"\",\"bytes\":5,\"size\":5"), event);
+        assertEquals(1, event.lines().count());
+    }
+
+    @Test
+    public void shouldEraseFrameBeforeLogLines() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream terminal = new PrintStream(out, true, StandardCharsets.UTF_8);
+        TerminalProgressRenderer renderer = new TerminalProgressRenderer(terminal);
+        ProgressSnapshot.Sample sample = new ProgressSnapshot.Sample("layer", 100, 1100, 100, false);
+        ProgressSnapshot snapshot = new ProgressSnapshot(0, List.of(sample), sample);
+
+        renderer.render(snapshot);
+        out.reset();
+        TerminalProgressRenderer.writeAbove(() -> terminal.print("log line\n"));
+        assertEquals("\033[2F\033[Jlog line\n", out.toString(StandardCharsets.UTF_8));
+
+        // Redrawn below the log line instead of over it
+        out.reset();
+        renderer.finish(snapshot);
+        assertFalse(out.toString(StandardCharsets.UTF_8).matches("(?s).*\033\\[\\d+F.*"), out.toString(StandardCharsets.UTF_8));
+        out.reset();
+        TerminalProgressRenderer.writeAbove(() -> terminal.print("after\n"));
+        assertEquals("after\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void shouldFormatHumanValues() {
+        assertEquals("512 B", TerminalProgressRenderer.humanBytes(512));
+        assertEquals("1.5 KiB", TerminalProgressRenderer.humanBytes(1536));
+        assertEquals("2.0 GiB", TerminalProgressRenderer.humanBytes(2L << 30));
+        assertEquals("01:05", TerminalProgressRenderer.duration(65));
+        assertEquals("1:00:01", TerminalProgressRenderer.duration(3601));
+        assertEquals("--:--", TerminalProgressRenderer.duration(-1));
+    }
+
+}
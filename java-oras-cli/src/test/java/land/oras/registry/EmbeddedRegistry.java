@@ -0,0 +1,921 @@
+package land.oras.registry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * In-JVM stand-in for an OCI distribution registry, so tests run offline.
+ * Implements blobs with ranges, monolithic and chunked uploads, manifests, tags and referrers over plain HTTP/1.1.
+ * Faults can be injected at runtime: latency, a bandwidth cap per request, 429 responses and dropped connections.
+ * Token authentication and registries ignoring ranges can be enabled as well.
+ * Blobs are stored on disk so large blobs do not weigh on the heap of the test.
+ */
+public final class EmbeddedRegistry implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_MANIFEST_SIZE = 4 * 1024 * 1024;
+    private static final String INDEX_MEDIA_TYPE = "application/vnd.oci.image.index.v1+json";
+    private static final Pattern SUBJECT = Pattern.compile("\"subject\"\\s*:\\s*\\{[^}]*\"digest\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern ARTIFACT_TYPE = Pattern.compile("\"artifactType\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern DIGEST = Pattern.compile("sha256:[a-f0-9]{64}");
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Path storage;
+    private final Map<String, Repository> repositories = new ConcurrentHashMap<>();
+    private final Map<String, Path> uploads = new ConcurrentHashMap<>();
+
+    private volatile Duration latency = Duration.ZERO;
+    private volatile long bandwidth;
+    private volatile int throttleEvery;
+    private volatile int dropEvery;
+    private volatile boolean ignoreRanges;
+    private volatile String credentials;
+    private volatile String token;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong blobReadCount = new AtomicLong();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder tokensIssued = new LongAdder();
+
+    private EmbeddedRegistry() throws IOException {
+        this.storage = Files.createTempDirectory("embedded-registry");
+        Files.createDirectories(storage.resolve("blobs"));
+        Files.createDirectories(storage.resolve("uploads"));
+        this.serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "embedded-registry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.execute(this::accept);
+    }
+
+    /**
+     * Start a registry on a free port
+     * @return The registry
+     * @throws IOException If the server cannot start
+     */
+    public static EmbeddedRegistry start() throws IOException {
+        return new EmbeddedRegistry();
+    }
+
+    /**
+     * @return The registry address, to prefix repositories with
+     */
+    public String address() {
+        return "localhost:" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * Delay every request
+     * @param latency The latency
+     * @return This registry
+     */
+    public EmbeddedRegistry latency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Cap the throughput of every request and response body
+     * @param bytesPerSecond The cap, 0 for unlimited
+     * @return This registry
+     */
+    public EmbeddedRegistry bandwidth(long bytesPerSecond) {
+        this.bandwidth = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Answer every n-th request with 429 Too Many Requests
+     * @param n The period, 0 to disable
+     * @return This registry
+     */
+    public EmbeddedRegistry throttleEvery(int n) {
+        this.throttleEvery = n;
+        return this;
+    }
+
+    /**
+     * Drop the connection halfway through every n-th blob download
+     * @param n The period, 0 to disable
+     * @return This registry
+     */
+    public EmbeddedRegistry dropEvery(int n) {
+        this.dropEvery = n;
+        return this;
+    }
+
+    /**
+     * Answer range requests with the whole blob, like registries without range support
+     * @param ignoreRanges Whether to ignore ranges
+     * @return This registry
+     */
+    public EmbeddedRegistry ignoreRanges(boolean ignoreRanges) {
+        this.ignoreRanges = ignoreRanges;
+        return this;
+    }
+
+    /**
+     * Require a Bearer token on the API, issued by a {@code /token} realm to clients sending the given credentials
+     * @param credentials The Authorization header expected by the realm, null to issue tokens anonymously
+     * @param token The token to issue, null to disable authentication
+     * @return This registry
+     */
+    public EmbeddedRegistry bearer(String credentials, String token) {
+        this.credentials = credentials;
+        this.token = token;
+        return this;
+    }
+
+    /**
+     * Remove all injected faults
+     * @return This registry
+     */
+    public EmbeddedRegistry healthy() {
+        return latency(Duration.ZERO).bandwidth(0).throttleEvery(0).dropEvery(0);
+    }
+
+    /**
+     * @return The number of tokens issued by the realm
+     */
+    public long tokensIssued() {
+        return tokensIssued.sum();
+    }
+
+    /**
+     * @return The number of requests answered with 429
+     */
+    public long throttled() {
+        return throttled.sum();
+    }
+
+    /**
+     * @return The number of dropped connections
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return The body bytes sent to clients
+     */
+    public long bytesSent() {
+        return bytesSent.sum();
+    }
+
+    /**
+     * @return The body bytes received from clients
+     */
+    public long bytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * Get the content of a stored blob
+     * @param digest The digest
+     * @return The content or null if unknown
+     * @throws IOException On read failure
+     */
+    public byte[] blob(String digest) throws IOException {
+        Path path = blobPath(digest);
+        return path != null && Files.exists(path) ? Files.readAllBytes(path) : null;
+    }
+
+    /**
+     * Get the content of a stored manifest
+     * @param name The repository name
+     * @param reference The tag or digest
+     * @return The content or null if unknown
+     */
+    public String manifest(String name, String reference) {
+        Repository repository = repositories.get(name);
+        Manifest manifest = repository != null ? repository.resolve(reference) : null;
+        return manifest != null ? new String(manifest.content(), StandardCharsets.UTF_8) : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : connections) {
+            socket.close();
+        }
+        executor.shutdownNow();
+        try (Stream<Path> files = Files.walk(storage)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.add(socket);
+                executor.execute(() -> serve(socket));
+            }
+            catch (IOException e) {
+                // Closed
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+            while (true) {
+                Request request = Request.read(in);
+                if (request == null) {
+                    return;
+                }
+                Response response = handle(request);
+                // Always consume what the handler did not read, to keep the connection usable
+                request.body().transferTo(OutputStream.nullOutputStream());
+                if (!write(request, response, out) || "close".equalsIgnoreCase(request.header("connection"))) {
+                    return;
+                }
+            }
+        }
+        catch (IOException e) {
+            // Client went away
+        }
+        finally {
+            connections.remove(socket);
+        }
+    }
+
+    private Response handle(Request request) throws IOException {
+        long number = requestCount.incrementAndGet();
+        Duration delay = latency;
+        if (!delay.isZero()) {
+            sleep(delay.toMillis());
+        }
+        int throttle = throttleEvery;
+        if (throttle > 0 && number % throttle == 0) {
+            throttled.increment();
+            request.body().transferTo(OutputStream.nullOutputStream());
+            return error(429, "TOOMANYREQUESTS", "too many requests").header("Retry-After", "1");
+        }
+        String path = request.path();
+        String required = token;
+        if (required != null) {
+            if (path.equals("/token")) {
+                String expected = credentials;
+                if (expected != null && !expected.equals(request.header("authorization"))) {
+                    return error(401, "UNAUTHORIZED", "invalid credentials");
+                }
+                tokensIssued.increment();
+                return json(200, "{\"token\":\"%s\"}".formatted(required));
+            }
+            if (!("Bearer " + required).equals(request.header("authorization"))) {
+                request.body().transferTo(OutputStream.nullOutputStream());
+                return error(401, "UNAUTHORIZED", "authentication required")
+                        .header("WWW-Authenticate", "Bearer realm=\"%s\",service=\"embedded\"".formatted(request.url("/token")));
+            }
+        }
+        if (path.equals("/v2") || path.equals("/v2/")) {
+            return json(200, "{}");
+        }
+        if (!path.startsWith("/v2/")) {
+            return error(404, "NOT_FOUND", "not found");
+        }
+        String rest = path.substring("/v2/".length());
+        int index;
+        if ((index = rest.lastIndexOf("/blobs/uploads")) > 0) {
+            String id = rest.substring(index + "/blobs/uploads".length());
+            return upload(request, rest.substring(0, index), id.startsWith("/") ? id.substring(1) : id);
+        }
+        if ((index = rest.lastIndexOf("/blobs/")) > 0) {
+            return blob(request, rest.substring(index + "/blobs/".length()));
+        }
+        if ((index = rest.lastIndexOf("/manifests/")) > 0) {
+            return manifest(request, rest.substring(0, index), rest.substring(index + "/manifests/".length()));
+        }
+        if ((index = rest.lastIndexOf("/referrers/")) > 0) {
+            return referrers(request, rest.substring(0, index), rest.substring(index + "/referrers/".length()));
+        }
+        if (rest.endsWith("/tags/list")) {
+            return tags(rest.substring(0, rest.length() - "/tags/list".length()));
+        }
+        return error(404, "NOT_FOUND", "not found");
+    }
+
+    private Response upload(Request request, String name, String id) throws IOException {
+        String location = request.url("/v2/" + name + "/blobs/uploads/");
+        if (id.isEmpty()) {
+            if (!request.method().equals("POST")) {
+                return error(405, "UNSUPPORTED", "method not allowed");
+            }
+            String mount = request.query("mount");
+            if (mount != null && blobPath(mount) != null && Files.exists(blobPath(mount))) {
+                return blobCreated(request, name, mount);
+            }
+            String digest = request.query("digest");
+            Path file = Files.createTempFile(storage.resolve("uploads"), "monolithic", ".tmp");
+            receive(request, file, false);
+            if (digest != null) {
+                return commit(request, name, file, digest);
+            }
+            String uuid = UUID.randomUUID().toString();
+            uploads.put(uuid, file);
+            return uploadStatus(202, location + uuid, file).header("Docker-Upload-UUID", uuid);
+        }
+        Path file = uploads.get(id);
+        if (file == null) {
+            return error(404, "BLOB_UPLOAD_UNKNOWN", "blob upload unknown");
+        }
+        switch (request.method()) {
+            case "PATCH":
+                receive(request, file, true);
+                return uploadStatus(202, location + id, file);
+            case "PUT":
+                receive(request, file, true);
+                String digest = request.query("digest");
+                if (digest == null) {
+                    return error(400, "DIGEST_INVALID", "missing digest");
+                }
+                uploads.remove(id);
+                return commit(request, name, file, digest);
+            case "GET":
+                return uploadStatus(204, location + id, file);
+            case "DELETE":
+                uploads.remove(id);
+                Files.deleteIfExists(file);
+                return new Response(204);
+            default:
+                return error(405, "UNSUPPORTED", "method not allowed");
+        }
+    }
+
+    private Response uploadStatus(int status, String location, Path file) throws IOException {
+        long size = Files.size(file);
+        return new Response(status)
+                .header("Location", location)
+                .header("Range", "0-" + Math.max(0, size - 1));
+    }
+
+    private Response commit(Request request, String name, Path file, String digest) throws IOException {
+        Path target = blobPath(digest);
+        if (target == null || !digest.equals(sha256(file))) {
+            Files.deleteIfExists(file);
+            return error(400, "DIGEST_INVALID", "provided digest did not match uploaded content");
+        }
+        Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return blobCreated(request, name, digest);
+    }
+
+    private Response blobCreated(Request request, String name, String digest) {
+        return new Response(201)
+                .header("Location", request.url("/v2/" + name + "/blobs/" + digest))
+                .header("Docker-Content-Digest", digest);
+    }
+
+    private Response blob(Request request, String digest) throws IOException {
+        Path path = blobPath(digest);
+        if (path == null || !Files.exists(path)) {
+            return error(404, "BLOB_UNKNOWN", "blob unknown to registry");
+        }
+        switch (request.method()) {
+            case "HEAD":
+            case "GET":
+                break;
+            case "DELETE":
+                Files.deleteIfExists(path);
+                return new Response(202);
+            default:
+                return error(405, "UNSUPPORTED", "method not allowed");
+        }
+        long size = Files.size(path);
+        Response response = new Response(200)
+                .header("Content-Type", "application/octet-stream")
+                .header("Docker-Content-Digest", digest)
+                .header("Accept-Ranges", "bytes");
+        long offset = 0;
+        long length = size;
+        String range = ignoreRanges ? null : request.header("range");
+        if (range != null) {
+            Matcher matcher = Pattern.compile("bytes=(\\d+)-(\\d*)").matcher(range.trim());
+            if (!matcher.matches() || Long.parseLong(matcher.group(1)) >= size) {
+                return error(416, "RANGE_INVALID", "invalid range").header("Content-Range", "bytes */" + size);
+            }
+            offset = Long.parseLong(matcher.group(1));
+            long end = matcher.group(2).isEmpty() ? size - 1 : Math.min(size - 1, Long.parseLong(matcher.group(2)));
+            length = end - offset + 1;
+            response = new Response(206).headers(response.headers)
+                    .header("Content-Range", "bytes %d-%d/%d".formatted(offset, end, size));
+        }
+        response.file(path, offset, length);
+        int drop = dropEvery;
+        if (request.method().equals("GET") && drop > 0 && blobReadCount.incrementAndGet() % drop == 0) {
+            response.drop = true;
+        }
+        return response;
+    }
+
+    private Response manifest(Request request, String name, String reference) throws IOException {
+        Repository repository = repositories.computeIfAbsent(name, key -> new Repository());
+        switch (request.method()) {
+            case "PUT": {
+                byte[] content = readLimited(request.body());
+                String mediaType = request.header("content-type");
+                String digest = sha256(content);
+                if (DIGEST.matcher(reference).matches() && !reference.equals(digest)) {
+                    return error(400, "DIGEST_INVALID", "manifest digest did not match");
+                }
+                repository.manifests.put(digest, new Manifest(mediaType, content));
+                if (!reference.startsWith("sha256:")) {
+                    repository.tags.put(reference, digest);
+                }
+                Response response = new Response(201)
+                        .header("Location", request.url("/v2/" + name + "/manifests/" + digest))
+                        .header("Docker-Content-Digest", digest);
+                Matcher subject = SUBJECT.matcher(new String(content, StandardCharsets.UTF_8));
+                if (subject.find()) {
+                    response.header("OCI-Subject", subject.group(1));
+                }
+                return response;
+            }
+            case "HEAD":
+            case "GET": {
+                Manifest manifest = repository.resolve(reference);
+                if (manifest == null) {
+                    return error(404, "MANIFEST_UNKNOWN", "manifest unknown");
+                }
+                return new Response(200)
+                        .header("Content-Type", manifest.mediaType())
+                        .header("Docker-Content-Digest", sha256(manifest.content()))
+                        .body(manifest.content());
+            }
+            case "DELETE": {
+                String digest = reference.startsWith("sha256:") ? reference : repository.tags.get(reference);
+                if (digest == null || repository.manifests.remove(digest) == null) {
+                    return error(404, "MANIFEST_UNKNOWN", "manifest unknown");
+                }
+                repository.tags.values().removeIf(digest::equals);
+                return new Response(202);
+            }
+            default:
+                return error(405, "UNSUPPORTED", "method not allowed");
+        }
+    }
+
+    private Response referrers(Request request, String name, String digest) {
+        Repository repository = repositories.computeIfAbsent(name, key -> new Repository());
+        String filter = request.query("artifactType");
+        List<String> descriptors = new ArrayList<>();
+        repository.manifests.forEach((manifestDigest, manifest) -> {
+            String json = new String(manifest.content(), StandardCharsets.UTF_8);
+            Matcher subject = SUBJECT.matcher(json);
+            if (!subject.find() || !subject.group(1).equals(digest)) {
+                return;
+            }
+            Matcher type = ARTIFACT_TYPE.matcher(json);
+            String artifactType = type.find() ? type.group(1) : null;
+            if (filter != null && !filter.equals(artifactType)) {
+                return;
+            }
+            descriptors.add("{\"mediaType\":\"%s\",\"digest\":\"%s\",\"size\":%d%s}".formatted(
+                    manifest.mediaType(), manifestDigest, manifest.content().length,
+                    artifactType != null ? ",\"artifactType\":\"" + artifactType + "\"" : ""));
+        });
+        Response response = new Response(200)
+                .header("Content-Type", INDEX_MEDIA_TYPE)
+                .body("{\"schemaVersion\":2,\"mediaType\":\"%s\",\"manifests\":[%s]}"
+                        .formatted(INDEX_MEDIA_TYPE, String.join(",", descriptors)).getBytes(StandardCharsets.UTF_8));
+        if (filter != null) {
+            response.header("OCI-Filters-Applied", "artifactType");
+        }
+        return response;
+    }
+
+    private Response tags(String name) {
+        Repository repository = repositories.get(name);
+        if (repository == null) {
+            return error(404, "NAME_UNKNOWN", "repository name not known to registry");
+        }
+        List<String> tags = new ArrayList<>();
+        for (String tag : new TreeSet<>(repository.tags.keySet())) {
+            tags.add("\"" + tag + "\"");
+        }
+        return json(200, "{\"name\":\"%s\",\"tags\":[%s]}".formatted(name, String.join(",", tags)));
+    }
+
+    private void receive(Request request, Path file, boolean append) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+            bytesReceived.add(copy(request.body(), out, Long.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Write the response
+     * @return False if the connection must be closed
+     */
+    private boolean write(Request request, Response response, OutputStream out) throws IOException {
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(response.status).append(' ')
+                .append(reason(response.status)).append("\r\n");
+        response.headers.forEach((key, value) -> head.append(key).append(": ").append(value).append("\r\n"));
+        if (response.status != 204) {
+            head.append("Content-Length: ").append(response.length()).append("\r\n");
+        }
+        head.append("\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (request.method().equals("HEAD")) {
+            out.flush();
+            return true;
+        }
+        if (response.file != null) {
+            long limit = response.drop ? response.length / 2 : response.length;
+            try (RandomAccessFile file = new RandomAccessFile(response.file.toFile(), "r")) {
+                file.seek(response.offset);
+                bytesSent.add(copy(new BoundedInputStream(file, limit), out, limit));
+            }
+        }
+        else if (response.body != null) {
+            bytesSent.add(copy(new ByteArrayInputStream(response.body), out, response.body.length));
+        }
+        out.flush();
+        if (response.drop) {
+            dropped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Copy at most limit bytes, within the bandwidth cap
+     */
+    private long copy(InputStream in, OutputStream out, long limit) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long copied = 0;
+        long start = System.nanoTime();
+        int read;
+        while (copied < limit && (read = in.read(buffer, 0, (int) Math.min(buffer.length, limit - copied))) > 0) {
+            long cap = bandwidth;
+            if (cap > 0) {
+                // Hold each chunk until the cap allows it
+                long wait = start + (copied + read) * 1_000_000_000L / cap - System.nanoTime();
+                if (wait > 0) {
+                    sleep(wait / 1_000_000);
+                }
+            }
+            out.write(buffer, 0, read);
+            copied += read;
+            if (cap > 0) {
+                out.flush();
+            }
+        }
+        return copied;
+    }
+
+    private Path blobPath(String digest) {
+        if (digest == null || !DIGEST.matcher(digest).matches()) {
+            return null;
+        }
+        return storage.resolve("blobs").resolve(digest.substring("sha256:".length()));
+    }
+
+    private static byte[] readLimited(InputStream in) throws IOException {
+        byte[] content = in.readNBytes(MAX_MANIFEST_SIZE + 1);
+        if (content.length > MAX_MANIFEST_SIZE) {
+            throw new IOException("Manifest too large");
+        }
+        return content;
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return "sha256:" + HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String sha256(byte[] content) {
+        return "sha256:" + HexFormat.of().formatHex(sha256().digest(content));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Response json(int status, String json) {
+        return new Response(status)
+                .header("Content-Type", "application/json")
+                .header("Docker-Distribution-API-Version", "registry/2.0")
+                .body(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Response error(int status, String code, String message) {
+        return json(status, "{\"errors\":[{\"code\":\"%s\",\"message\":\"%s\",\"detail\":null}]}".formatted(code, message));
+    }
+
+    private static String reason(int status) {
+        return switch (status) {
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 202 -> "Accepted";
+            case 204 -> "No Content";
+            case 206 -> "Partial Content";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 416 -> "Range Not Satisfiable";
+            case 429 -> "Too Many Requests";
+            default -> "Status";
+        };
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    private record Manifest(String mediaType, byte[] content) {
+    }
+
+    private static final class Repository {
+
+        private final Map<String, Manifest> manifests = new ConcurrentHashMap<>();
+        private final Map<String, String> tags = new ConcurrentHashMap<>();
+
+        private Manifest resolve(String reference) {
+            String digest = reference.startsWith("sha256:") ? reference : tags.get(reference);
+            return digest != null ? manifests.get(digest) : null;
+        }
+    }
+
+    private static final class Response {
+
+        private final int status;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private byte[] body;
+        private Path file;
+        private long offset;
+        private long length;
+        private boolean drop;
+
+        private Response(int status) {
+            this.status = status;
+        }
+
+        private Response header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        private Response headers(Map<String, String> headers) {
+            this.headers.putAll(headers);
+            return this;
+        }
+
+        private Response body(byte[] body) {
+            this.body = body;
+            return this;
+        }
+
+        private void file(Path file, long offset, long length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        private long length() {
+            return file != null ? length : body != null ? body.length : 0;
+        }
+    }
+
+    /**
+     * Minimal HTTP/1.1 request, with the body read lazily from the connection
+     */
+    private record Request(String method, String path, Map<String, String> query, Map<String, String> headers, InputStream body) {
+
+        private static Request read(InputStream in) throws IOException {
+            String line = readLine(in);
+            if (line == null) {
+                return null;
+            }
+            String[] parts = line.split(" ");
+            if (parts.length < 3) {
+                throw new IOException("Malformed request line: " + line);
+            }
+            Map<String, String> headers = new LinkedHashMap<>();
+            String header;
+            while ((header = readLine(in)) != null && !header.isEmpty()) {
+                int colon = header.indexOf(':');
+                if (colon > 0) {
+                    headers.put(header.substring(0, colon).trim().toLowerCase(Locale.ROOT), header.substring(colon + 1).trim());
+                }
+            }
+            String target = parts[1];
+            int mark = target.indexOf('?');
+            Map<String, String> query = new LinkedHashMap<>();
+            if (mark >= 0) {
+                for (String pair : target.substring(mark + 1).split("&")) {
+                    int equals = pair.indexOf('=');
+                    if (equals > 0) {
+                        query.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+                    }
+                }
+                target = target.substring(0, mark);
+            }
+            InputStream body;
+            if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+                body = new ChunkedInputStream(in);
+            }
+            else {
+                long length = headers.containsKey("content-length") ? Long.parseLong(headers.get("content-length")) : 0;
+                body = new BoundedInputStream(in, length);
+            }
+            return new Request(parts[0], target, query, headers, body);
+        }
+
+        private String header(String name) {
+            return headers.get(name);
+        }
+
+        private String query(String name) {
+            return query.get(name);
+        }
+
+        private String url(String path) {
+            return "http://" + headers.getOrDefault("host", "localhost") + path;
+        }
+
+        private static String decode(String value) {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8);
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (b == '\n') {
+                    byte[] bytes = line.toByteArray();
+                    int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                    return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+                }
+                line.write(b);
+            }
+            if (line.size() == 0) {
+                return null;
+            }
+            throw new EOFException("Connection closed within a line");
+        }
+    }
+
+    /**
+     * Reads at most a fixed number of bytes, from a stream or a file
+     */
+    private static final class BoundedInputStream extends InputStream {
+
+        private final InputStream in;
+        private final RandomAccessFile file;
+        private long remaining;
+
+        private BoundedInputStream(InputStream in, long remaining) {
+            this.in = in;
+            this.file = null;
+            this.remaining = remaining;
+        }
+
+        private BoundedInputStream(RandomAccessFile file, long remaining) {
+            this.in = null;
+            this.file = file;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) > 0 ? one[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = (int) Math.min(len, remaining);
+            int read = in != null ? in.read(b, off, count) : file.read(b, off, count);
+            if (read < 0) {
+                throw new EOFException("Connection closed within a body");
+            }
+            remaining -= read;
+            return read;
+        }
+    }
+
+    /**
+     * Decodes a chunked request body
+     */
+    private static final class ChunkedInputStream extends InputStream {
+
+        private final InputStream in;
+        private long remaining;
+        private boolean eof;
+
+        private ChunkedInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) > 0 ? one[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eof) {
+                return -1;
+            }
+            if (remaining == 0) {
+                String size = Request.readLine(in);
+                if (size == null) {
+                    throw new EOFException("Connection closed within a chunked body");
+                }
+                int extension = size.indexOf(';');
+                remaining = Long.parseLong((extension >= 0 ? size.substring(0, extension) : size).trim(), 16);
+                if (remaining == 0) {
+                    // Trailers up to the empty line
+                    String trailer;
+                    while ((trailer = Request.readLine(in)) != null && !trailer.isEmpty()) {
+                        // Ignored
+                    }
+                    eof = true;
+                    return -1;
+                }
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read < 0) {
+                throw new EOFException("Connection closed within a chunk");
+            }
+            remaining -= read;
+            if (remaining == 0) {
+                // CRLF after the chunk data
+                Request.readLine(in);
+            }
+            return read;
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package land.oras.registry;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EmbeddedRegistryTest {
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @Test
+    public void shouldUploadAndServeBlobs() throws Exception {
+        try (EmbeddedRegistry registry = EmbeddedRegistry.start()) {
+            byte[] data = "hello blob".getBytes(StandardCharsets.UTF_8);
+            String digest = digest(data);
+
+            // Monolithic upload
+            HttpResponse<String> created = send(registry, "POST", "/v2/test/blobs/uploads/?digest=" + digest, data);
+            assertEquals(201, created.statusCode());
+            assertEquals(digest, created.headers().firstValue("Docker-Content-Digest").orElseThrow());
+
+            // Chunked upload
+            byte[] other = "second blob in two chunks".getBytes(StandardCharsets.UTF_8);
+            HttpResponse<String> session = send(registry, "POST", "/v2/nested/test/blobs/uploads/", new byte[0]);
+            assertEquals(202, session.statusCode());
+            String location = session.headers().firstValue("Location").orElseThrow();
+            HttpResponse<String> patched = client.send(HttpRequest.newBuilder(URI.create(location))
+                    .method("PATCH", HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(other, 0, 10)))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(202, patched.statusCode());
+            assertEquals("0-9", patched.headers().firstValue("Range").orElseThrow());
+            HttpResponse<String> put = client.send(HttpRequest.newBuilder(URI.create(location + "?digest=" + digest(other)))
+                    .PUT(HttpRequest.BodyPublishers.ofByteArray(other, 10, other.length - 10))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(201, put.statusCode());
+            assertArrayEquals(other, registry.blob(digest(other)));
+
+            // Wrong digest
+            assertEquals(400, send(registry, "POST", "/v2/test/blobs/uploads/?digest=" + digest(other), data).statusCode());
+
+            // Reads
+            HttpResponse<String> head = send(registry, "HEAD", "/v2/test/blobs/" + digest, null);
+            assertEquals(200, head.statusCode());
+            assertEquals(String.valueOf(data.length), head.headers().firstValue("Content-Length").orElseThrow());
+            assertEquals("hello blob", send(registry, "GET", "/v2/test/blobs/" + digest, null).body());
+            HttpResponse<String> range = client.send(request(registry, "GET", "/v2/test/blobs/" + digest, null)
+                    .header("Range", "bytes=6-").build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(206, range.statusCode());
+            assertEquals("blob", range.body());
+            assertEquals("bytes 6-9/10", range.headers().firstValue("Content-Range").orElseThrow());
+            assertEquals(404, send(registry, "GET", "/v2/test/blobs/" + digest("unknown".getBytes()), null).statusCode());
+        }
+    }
+
+    @Test
+    public void shouldStoreManifestsAndReferrers() throws Exception {
+        try (EmbeddedRegistry registry = EmbeddedRegistry.start()) {
+            String manifest = "{\"schemaVersion\":2,\"mediaType\":\"application/vnd.oci.image.manifest.v1+json\",\"layers\":[]}";
+            HttpResponse<String> put = client.send(request(registry, "PUT", "/v2/test/manifests/v1", manifest.getBytes(StandardCharsets.UTF_8))
+                    .header("Content-Type", "application/vnd.oci.image.manifest.v1+json").build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(201, put.statusCode());
+            String digest = put.headers().firstValue("Docker-Content-Digest").orElseThrow();
+            assertEquals(manifest, send(registry, "GET", "/v2/test/manifests/v1", null).body());
+            assertEquals(manifest, send(registry, "GET", "/v2/test/manifests/" + digest, null).body());
+
+            String referrer = "{\"schemaVersion\":2,\"artifactType\":\"application/sbom\",\"subject\":{\"mediaType\":\"application/vnd.oci.image.manifest.v1+json\",\"digest\":\"%s\",\"size\":1}}".formatted(digest);
+            HttpResponse<String> attached = client.send(request(registry, "PUT", "/v2/test/manifests/" + digest(referrer.getBytes(StandardCharsets.UTF_8)), referrer.getBytes(StandardCharsets.UTF_8))
+                    .header("Content-Type", "application/vnd.oci.image.manifest.v1+json").build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(digest, attached.headers().firstValue("OCI-Subject").orElseThrow());
+            String referrers = send(registry, "GET", "/v2/test/referrers/" + digest, null).body();
+            assertTrue(referrers.contains("\"artifactType\":\"application/sbom\""), referrers);
+            assertTrue(send(registry, "GET", "/v2/test/referrers/" + digest + "?artifactType=other", null).body().contains("\"manifests\":[]"));
+            assertEquals("{\"name\":\"test\",\"tags\":[\"v1\"]}", send(registry, "GET", "/v2/test/tags/list", null).body());
+
+            assertEquals(202, send(registry, "DELETE", "/v2/test/manifests/" + digest, null).statusCode());
+            assertEquals(404, send(registry, "GET", "/v2/test/manifests/v1", null).statusCode());
+        }
+    }
+
+    @Test
+    public void shouldInjectFaults() throws Exception {
+        try (EmbeddedRegistry registry = EmbeddedRegistry.start()) {
+            byte[] data = new byte[64 * 1024];
+            String digest = digest(data);
+            assertEquals(201, send(registry, "POST", "/v2/test/blobs/uploads/?digest=" + digest, data).statusCode());
+
+            registry.throttleEvery(1);
+            HttpResponse<String> throttled = send(registry, "GET", "/v2/test/blobs/" + digest, null);
+            assertEquals(429, throttled.statusCode());
+            assertTrue(throttled.body().contains("TOOMANYREQUESTS"));
+            assertEquals(1, registry.throttled());
+
+            registry.healthy().dropEvery(1);
+            assertThrows(IOException.class, () -> {
+                try (InputStream body = client.send(request(registry, "GET", "/v2/test/blobs/" + digest, null).build(),
+                        HttpResponse.BodyHandlers.ofInputStream()).body()) {
+                    body.readAllBytes();
+                }
+            });
+            assertEquals(1, registry.dropped());
+
+            registry.healthy().bandwidth(128 * 1024).latency(Duration.ofMillis(100));
+            long start = System.nanoTime();
+            assertEquals(data.length, client.send(request(registry, "GET", "/v2/test/blobs/" + digest, null).build(),
+                    HttpResponse.BodyHandlers.ofByteArray()).body().length);
+            long millis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+            assertTrue(millis >= 500, "took " + millis + " ms");
+        }
+    }
+
+    private HttpResponse<String> send(EmbeddedRegistry registry, String method, String path, byte[] body) throws Exception {
+        return client.send(request(registry, method, path, body).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpRequest.Builder request(EmbeddedRegistry registry, String method, String path, byte[] body) {
+        return HttpRequest.newBuilder(URI.create("http://" + registry.address() + path))
+                .method(method, body != null ? HttpRequest.BodyPublishers.ofByteArray(body) : HttpRequest.BodyPublishers.noBody());
+    }
+
+    private static String digest(byte[] data) throws Exception {
+        return "sha256:" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+}